@@ -0,0 +1,50 @@
+package se.sensera.banking.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+    @Benchmark
+    public long findAccountsOfUser(BankState bank) throws UseException {
+        String userId = bank.users.get(bank.randomIndex()).getId();
+        return bank.accountService.findAccounts("", userId, null, null, AccountService.SortOrder.None).count();
+    }
+
+    @Benchmark
+    public long findAccountsByName(BankState bank) throws UseException {
+        String searchValue = "count " + bank.randomIndex();
+        return bank.accountService.findAccounts(searchValue, null, 0, 10, AccountService.SortOrder.None).count();
+    }
+
+    @Benchmark
+    public long findAccountsSortedByName(BankState bank) throws UseException {
+        int pageNumber = bank.randomIndex() / 10;
+        return bank.accountService.findAccounts("", null, pageNumber, 10, AccountService.SortOrder.AccountName).count();
+    }
+
+    @Benchmark
+    public long findAccountsAfterName(BankState bank) {
+        return bank.accountService.findAccountsAfter(BankState.accountName(bank.randomIndex()), 10).count();
+    }
+
+    @Benchmark
+    public UseExceptionType rejectDuplicateAccountName(BankState bank) {
+        int n = bank.randomIndex();
+        try {
+            bank.accountService.createAccount(bank.users.get(n).getId(), BankState.accountName(n));
+            throw new IllegalStateException("Duplicate account name accepted");
+        } catch (UseException e) {
+            return e.getUserExceptionType();
+        }
+    }
+}
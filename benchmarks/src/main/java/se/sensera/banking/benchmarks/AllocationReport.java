@@ -0,0 +1,37 @@
+package se.sensera.banking.benchmarks;
+
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.metrics.AllocationMeter;
+
+/**
+ * Prints the bytes every {@link LoadOperation} and repository lookup allocates per call on the calling thread.
+ * Settings are the system properties {@code users}, {@code warmup} and {@code calls}.
+ */
+public class AllocationReport {
+
+    public static void main(String[] args) throws UseException {
+        if (!AllocationMeter.isSupported())
+            throw new IllegalStateException("Thread allocation counting not supported by this JVM");
+        BankState bank = new BankState();
+        bank.datasetSize = Integer.getInteger("users", 10_000);
+        bank.setUp();
+        int warmup = Integer.getInteger("warmup", 10_000);
+        int calls = Integer.getInteger("calls", 10_000);
+
+        System.out.printf("%-24s %12s%n", "operation", "bytes/call");
+        for (LoadOperation operation : LoadOperation.values()) {
+            report(operation.getName(), AllocationMeter.bytesPerCall(warmup, calls, n -> operation.run(bank, n % bank.datasetSize)));
+        }
+        report("get-user", AllocationMeter.bytesPerCall(warmup, calls,
+                n -> bank.usersRepository.getEntityById(bank.users.get(n % bank.datasetSize).getId())));
+        report("get-account", AllocationMeter.bytesPerCall(warmup, calls,
+                n -> bank.accountsRepository.getEntityById(bank.accounts.get(n % bank.datasetSize).getId())));
+        report("try-withdrawal-rejected", AllocationMeter.bytesPerCall(warmup, calls,
+                n -> bank.transactionService.tryCreateTransaction(BankState.CREATED, bank.users.get(n % bank.datasetSize).getId(),
+                        bank.accounts.get(n % bank.datasetSize).getId(), -1_000_000_000)));
+    }
+
+    private static void report(String operation, double bytes) {
+        System.out.printf("%-24s %12.1f%n", operation, bytes);
+    }
+}
@@ -0,0 +1,81 @@
+package se.sensera.banking.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.sensera.banking.*;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.UserServiceImpl;
+import se.sensera.banking.impl.engine.TransactionEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A bank with {@code datasetSize} users, one account each and a few transactions per account, shared by all
+ * benchmark threads. Indexes are warmed before measuring so the first call does not pay for seeding them.
+ * Transactions go through the {@link TransactionEngine} named by {@code engine}.
+ */
+@State(Scope.Benchmark)
+public class BankState {
+    static final String CREATED = "2020-01-01 10:00";
+
+    @Param({"1000", "100000"})
+    int datasetSize;
+
+    @Param({"direct"})
+    String engine = "direct";
+
+    IndexedRepository.UsersIndexedRepository usersRepository;
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    IndexedRepository.TransactionsIndexedRepository transactionsRepository;
+    UserServiceImpl userService;
+    AccountServiceImpl accountService;
+    TransactionService transactionService;
+    List<User> users;
+    List<Account> accounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws UseException {
+        usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        transactionsRepository = new IndexedRepository.TransactionsIndexedRepository();
+        userService = new UserServiceImpl(usersRepository);
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        transactionService = TransactionEngine.parse(engine).create(usersRepository, accountsRepository, transactionsRepository);
+        users = new ArrayList<>(datasetSize);
+        accounts = new ArrayList<>(datasetSize);
+        for (int n = 0; n < datasetSize; n++) {
+            User user = userService.createUser("User " + n, pid(n));
+            users.add(user);
+            accounts.add(accountService.createAccount(user.getId(), accountName(n)));
+        }
+        int transactions = Math.min(datasetSize, 10_000);
+        for (int n = 0; n < transactions; n++)
+            transactionService.createTransaction(CREATED, users.get(n).getId(), accounts.get(n).getId(), 1000);
+        userService.find("user", 0, 10, UserService.SortOrder.None);
+        accountService.findAccounts("account", null, 0, 10, AccountService.SortOrder.None);
+        accountService.findAccounts("", users.get(0).getId(), null, null, AccountService.SortOrder.None);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (transactionService instanceof Closeable)
+            ((Closeable) transactionService).close();
+    }
+
+    int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(datasetSize);
+    }
+
+    static String pid(int n) {
+        return String.format("19800101-%07d", n);
+    }
+
+    static String accountName(int n) {
+        return "Account " + n;
+    }
+}
@@ -0,0 +1,39 @@
+package se.sensera.banking.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON result file per run, so results of two builds can
+ * be compared file by file. Thread counts come from {@code -Dthreads=1,4} and the output directory from
+ * {@code -Dresults=target/jmh-results}. Any other arguments are regular JMH command line options.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        File results = new File(System.getProperty("results", "target/jmh-results"));
+        if (!results.isDirectory() && !results.mkdirs())
+            throw new IllegalStateException("Cannot create " + results);
+        int[] threadCounts = Arrays.stream(System.getProperty("threads", "1,4").split(","))
+                .map(String::strip)
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        for (int threads : threadCounts) {
+            new Runner(new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(results, "threads-" + threads + ".json").getPath())
+                    .build())
+                    .run();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package se.sensera.banking.benchmarks;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import se.sensera.banking.exceptions.UseException;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the services with a mix of operations at a fixed rate from a number of threads and reports throughput and
+ * latency percentiles per operation.
+ * <p>
+ * Each thread works through a schedule of intended start times and latency is measured from the intended start, not
+ * from when the call was actually made. A stall therefore shows up in the latency of every call that should have
+ * been made during it, instead of hiding as a few slow calls (coordinated omission). With {@code -Drate=0} calls are
+ * made back to back and latency is plain service time.
+ * <p>
+ * Settings are system properties: {@code users}, {@code rate} (calls per second, all threads together),
+ * {@code concurrency}, {@code warmup} and {@code duration} (seconds), {@code mix} (see {@link WorkloadMix}) and
+ * {@code histograms}, a directory to write the full percentile distribution of every operation to, and
+ * {@code engine}, the {@link se.sensera.banking.impl.engine.TransactionEngine} transactions run on.
+ */
+public class LoadGenerator {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final BankState bank;
+    private final WorkloadMix mix;
+    private final int rate;
+    private final int concurrency;
+    private final Map<LoadOperation, OperationStats> stats = new EnumMap<>(LoadOperation.class);
+
+    public LoadGenerator(BankState bank, WorkloadMix mix, int rate, int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be positive " + concurrency);
+        this.bank = bank;
+        this.mix = mix;
+        this.rate = rate;
+        this.concurrency = concurrency;
+        for (LoadOperation operation : mix.operations())
+            stats.put(operation, new OperationStats());
+    }
+
+    public static void main(String[] args) throws UseException, InterruptedException, IOException {
+        BankState bank = new BankState();
+        bank.datasetSize = Integer.getInteger("users", 10_000);
+        bank.engine = System.getProperty("engine", "direct");
+        System.out.printf("Creating %d users and accounts%n", bank.datasetSize);
+        bank.setUp();
+
+        LoadGenerator loadGenerator = new LoadGenerator(bank,
+                WorkloadMix.parse(System.getProperty("mix", WorkloadMix.DEFAULT)),
+                Integer.getInteger("rate", 1000),
+                Integer.getInteger("concurrency", 4));
+        loadGenerator.run(Integer.getInteger("warmup", 5));
+        loadGenerator.reset();
+        long seconds = Integer.getInteger("duration", 30);
+        loadGenerator.run(seconds);
+        loadGenerator.report(System.out, seconds);
+
+        String histograms = System.getProperty("histograms");
+        if (histograms != null)
+            loadGenerator.writeHistograms(new File(histograms));
+        bank.tearDown();
+    }
+
+    public void run(long seconds) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * concurrency / rate : 0;
+        for (int worker = 0; worker < concurrency; worker++) {
+            // Spread the workers over one interval so they do not all fire at the same instant
+            long firstCall = start + (interval * worker) / concurrency;
+            executorService.execute(() -> {
+                try {
+                    work(firstCall, interval, end);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executorService.shutdown();
+    }
+
+    private void work(long firstCall, long interval, long end) {
+        long intendedStart = firstCall;
+        while (intendedStart < end) {
+            long now = System.nanoTime();
+            if (interval > 0 && now < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+                continue;
+            }
+            LoadOperation operation = mix.next();
+            OperationStats operationStats = stats.get(operation);
+            long begin = System.nanoTime();
+            try {
+                operation.run(bank);
+                operationStats.completed.increment();
+            } catch (UseException e) {
+                operationStats.rejected.increment();
+            } catch (RuntimeException e) {
+                operationStats.failed.increment();
+            }
+            long finished = System.nanoTime();
+            operationStats.latencies.recordValue(Math.min(finished - (interval > 0 ? intendedStart : begin), HIGHEST_TRACKABLE_NANOS));
+            intendedStart = interval > 0 ? intendedStart + interval : finished;
+        }
+    }
+
+    public void reset() {
+        stats.replaceAll((operation, operationStats) -> new OperationStats());
+    }
+
+    public void report(PrintStream out, long seconds) {
+        out.printf("%-16s %10s %10s %9s %9s %12s %12s %12s %12s%n",
+                "operation", "calls", "calls/s", "rejected", "failed", "p50 us", "p99 us", "p99.9 us", "max us");
+        stats.forEach((operation, operationStats) -> {
+            Histogram latencies = operationStats.latencies;
+            long calls = latencies.getTotalCount();
+            out.printf("%-16s %10d %10.1f %9d %9d %12.1f %12.1f %12.1f %12.1f%n",
+                    operation.getName(), calls, (double) calls / seconds,
+                    operationStats.rejected.sum(), operationStats.failed.sum(),
+                    micros(latencies.getValueAtPercentile(50)), micros(latencies.getValueAtPercentile(99)),
+                    micros(latencies.getValueAtPercentile(99.9)), micros(latencies.getMaxValue()));
+        });
+    }
+
+    public void writeHistograms(File directory) throws FileNotFoundException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalStateException("Cannot create " + directory);
+        for (Map.Entry<LoadOperation, OperationStats> entry : stats.entrySet()) {
+            try (PrintStream out = new PrintStream(new File(directory, entry.getKey().getName() + ".hgrm"))) {
+                entry.getValue().latencies.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    private static class OperationStats {
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+        final LongAdder completed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder failed = new LongAdder();
+    }
+}
@@ -0,0 +1,83 @@
+package se.sensera.banking.benchmarks;
+
+import se.sensera.banking.AccountService;
+import se.sensera.banking.UserService;
+import se.sensera.banking.exceptions.UseException;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The operations the load generator mixes, each one a single service call against a random user and account.
+ */
+public enum LoadOperation {
+    DEPOSIT("deposit") {
+        @Override
+        void run(BankState bank, int n) throws UseException {
+            bank.transactionService.createTransaction(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId(), 1);
+        }
+    },
+    WITHDRAWAL("withdrawal") {
+        @Override
+        void run(BankState bank, int n) throws UseException {
+            bank.transactionService.createTransaction(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId(), -1);
+        }
+    },
+    SUM("sum") {
+        @Override
+        void run(BankState bank, int n) throws UseException {
+            bank.transactionService.sum(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId());
+        }
+    },
+    FIND_USERS("find-users") {
+        @Override
+        void run(BankState bank, int n) {
+            bank.userService.find("user " + n, 0, 10, UserService.SortOrder.Name).count();
+        }
+    },
+    FIND_ACCOUNTS("find-accounts") {
+        @Override
+        void run(BankState bank, int n) throws UseException {
+            bank.accountService.findAccounts("", bank.users.get(n).getId(), null, null, AccountService.SortOrder.None).count();
+        }
+    },
+    RENAME_ACCOUNT("rename-account") {
+        @Override
+        void run(BankState bank, int n) throws UseException {
+            String name = BankState.accountName(n) + " renamed " + renames.incrementAndGet();
+            bank.accountService.changeAccount(bank.users.get(n).getId(), bank.accounts.get(n).getId(), changeAccount -> {
+                try {
+                    changeAccount.setName(name);
+                } catch (UseException e) {
+                    throw new IllegalStateException("Rename to unique name rejected", e);
+                }
+            });
+        }
+    };
+
+    private static final AtomicLong renames = new AtomicLong();
+
+    private final String name;
+
+    LoadOperation(String name) {
+        this.name = name;
+    }
+
+    abstract void run(BankState bank, int n) throws UseException;
+
+    void run(BankState bank) throws UseException {
+        run(bank, ThreadLocalRandom.current().nextInt(bank.datasetSize));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static LoadOperation parse(String name) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.name.equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("doesn't exist " + name));
+    }
+}
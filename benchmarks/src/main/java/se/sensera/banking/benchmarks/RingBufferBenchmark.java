@@ -0,0 +1,49 @@
+package se.sensera.banking.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.sensera.banking.TransactionResult;
+import se.sensera.banking.impl.engine.RingBufferTransactionService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deposits through a {@link RingBufferTransactionService} with {@value #PIPELINE_DEPTH} requests in flight per
+ * invocation, so the figure is the engine's own throughput and not the round trip of one caller waiting for its
+ * transaction to be journaled.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingBufferBenchmark {
+    static final int PIPELINE_DEPTH = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        RingBufferTransactionService transactionService;
+
+        @Setup(Level.Trial)
+        public void setUp(BankState bank) {
+            transactionService = new RingBufferTransactionService(bank.usersRepository, bank.accountsRepository, bank.transactionsRepository);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            transactionService.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public TransactionResult pipelinedDeposits(BankState bank, Engine engine) {
+        CompletableFuture<TransactionResult> last = null;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            int n = bank.randomIndex();
+            last = engine.transactionService.submitTransaction(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId(), 1);
+        }
+        // Results complete in publishing order, the last one done means all are
+        return last.join();
+    }
+}
@@ -0,0 +1,49 @@
+package se.sensera.banking.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionResult;
+import se.sensera.banking.exceptions.UseException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactions are only ever added, so the repository grows through a run and later iterations of
+ * {@link #createTransaction} scan more transactions in the funds check.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionServiceBenchmark {
+
+    @Benchmark
+    public Transaction createTransaction(BankState bank) throws UseException {
+        int n = bank.randomIndex();
+        return bank.transactionService.createTransaction(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId(), 1);
+    }
+
+    @Benchmark
+    public UseException rejectedWithdrawal(BankState bank) {
+        int n = bank.randomIndex();
+        try {
+            bank.transactionService.createTransaction(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId(), -1_000_000_000);
+            return null;
+        } catch (UseException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public TransactionResult tryRejectedWithdrawal(BankState bank) {
+        int n = bank.randomIndex();
+        return bank.transactionService.tryCreateTransaction(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId(), -1_000_000_000);
+    }
+
+    @Benchmark
+    public double sum(BankState bank) throws UseException {
+        int n = bank.randomIndex();
+        return bank.transactionService.sum(BankState.CREATED, bank.users.get(n).getId(), bank.accounts.get(n).getId());
+    }
+}
@@ -0,0 +1,48 @@
+package se.sensera.banking.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.sensera.banking.User;
+import se.sensera.banking.UserService;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    @Benchmark
+    public long findByName(BankState bank) {
+        return bank.userService.find("user " + bank.randomIndex(), 0, 10, UserService.SortOrder.None).count();
+    }
+
+    @Benchmark
+    public long findSortedByName(BankState bank) {
+        return bank.userService.find("user", bank.randomIndex() / 10, 10, UserService.SortOrder.Name).count();
+    }
+
+    @Benchmark
+    public long findSortedByPersonalId(BankState bank) {
+        return bank.userService.find("", bank.randomIndex() / 10, 10, UserService.SortOrder.PersonalId).count();
+    }
+
+    @Benchmark
+    public Optional<User> getEntityById(BankState bank) {
+        return bank.usersRepository.getEntityById(bank.users.get(bank.randomIndex()).getId());
+    }
+
+    @Benchmark
+    public UseExceptionType rejectDuplicatePersonalId(BankState bank) {
+        try {
+            bank.userService.createUser("Duplicate", BankState.pid(bank.randomIndex()));
+            throw new IllegalStateException("Duplicate personal identification number accepted");
+        } catch (UseException e) {
+            return e.getUserExceptionType();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package se.sensera.banking.benchmarks;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted choice between the operations of the load generator, parsed from {@code operation:weight} pairs such as
+ * {@code deposit:40,withdrawal:20,sum:20,find-users:10,find-accounts:5,rename-account:5}.
+ */
+public class WorkloadMix {
+    public static final String DEFAULT = "deposit:40,withdrawal:20,sum:20,find-users:10,find-accounts:5,rename-account:5";
+
+    private final LoadOperation[] operations;
+    private final int[] cumulativeWeights;
+
+    private WorkloadMix(Map<LoadOperation, Integer> weights) {
+        operations = weights.keySet().toArray(new LoadOperation[0]);
+        cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += weights.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0)
+            throw new IllegalArgumentException("Workload mix has no weight");
+    }
+
+    public static WorkloadMix parse(String mix) {
+        Map<LoadOperation, Integer> weights = new EnumMap<>(LoadOperation.class);
+        for (String part : mix.split(",")) {
+            String[] operationAndWeight = part.strip().split(":");
+            if (operationAndWeight.length != 2)
+                throw new IllegalArgumentException("Expected operation:weight but was " + part);
+            int weight = Integer.parseInt(operationAndWeight[1].strip());
+            if (weight < 0)
+                throw new IllegalArgumentException("Negative weight " + part);
+            weights.put(LoadOperation.parse(operationAndWeight[0].strip()), weight);
+        }
+        return new WorkloadMix(weights);
+    }
+
+    public LoadOperation next() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++)
+            if (pick < cumulativeWeights[i])
+                return operations[i];
+        throw new IllegalStateException("No operation for " + pick);
+    }
+
+    public LoadOperation[] operations() {
+        return operations.clone();
+    }
+}
@@ -16,6 +16,7 @@ public interface AccountService {
     Account inactivateAccount(String userId, String accountId) throws UseException;
 
     Stream<Account> findAccounts(String searchValue, String userId, Integer pageNumber, Integer pageSize, SortOrder sortOrder) throws UseException;
+    Stream<Account> findAccountsAfter(String afterName, Integer pageSize);
 
     interface ChangeAccount {
         void setName(String name) throws UseException;
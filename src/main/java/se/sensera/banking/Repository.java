@@ -1,5 +1,6 @@
 package se.sensera.banking;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -9,6 +10,10 @@ public interface Repository<E extends Repository.Entity<I>,I> {
     E save(E entity);
     E delete(E entity);
 
+    default void saveAll(Collection<E> entities) {
+        entities.forEach(this::save);
+    }
+
     interface Entity<I> {
         I getId();
     }
@@ -0,0 +1,44 @@
+package se.sensera.banking;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+/**
+ * Outcome of {@link TransactionService#tryCreateTransaction}, either the created transaction or the reason it was
+ * rejected. Rejections are shared instances, rejecting does not allocate.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class TransactionResult {
+    private static final TransactionResult[] REJECTIONS = new TransactionResult[UseExceptionType.values().length];
+
+    static {
+        for (UseExceptionType useExceptionType : UseExceptionType.values())
+            REJECTIONS[useExceptionType.ordinal()] = new TransactionResult(null, useExceptionType);
+    }
+
+    Transaction transaction;
+    UseExceptionType rejection;
+
+    public static TransactionResult success(Transaction transaction) {
+        return new TransactionResult(transaction, null);
+    }
+
+    public static TransactionResult rejected(UseExceptionType rejection) {
+        return REJECTIONS[rejection.ordinal()];
+    }
+
+    public boolean isSuccess() {
+        return rejection == null;
+    }
+
+    public Transaction orElseThrow() throws UseException {
+        if (rejection != null)
+            throw UseException.withoutStackTrace(Activity.CREATE_TRANSACTION, rejection);
+        return transaction;
+    }
+}
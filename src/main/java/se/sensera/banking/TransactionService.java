@@ -7,6 +7,18 @@ import java.util.function.Consumer;
 public interface TransactionService {
     Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException;
 
+    /**
+     * Same as {@link #createTransaction} but returns a rejection instead of throwing, for callers where rejections
+     * such as NOT_FUNDED are routine.
+     */
+    default TransactionResult tryCreateTransaction(String created, String userId, String accountId, double amount) {
+        try {
+            return TransactionResult.success(createTransaction(created, userId, accountId, amount));
+        } catch (UseException e) {
+            return TransactionResult.rejected(e.getUserExceptionType());
+        }
+    }
+
     double sum(String created, String userId, String accountId) throws UseException;
 
     void addMonitor(Consumer<Transaction> monitor);
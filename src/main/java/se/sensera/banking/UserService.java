@@ -1,6 +1,7 @@
 package se.sensera.banking;
 
 import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.utils.Page;
 
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -18,6 +19,10 @@ public interface UserService {
 
     Stream<User> find(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder);
 
+    Page<User> findPage(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder);
+
+    Stream<User> findSimilar(String name, int maxDistance, Integer pageSize);
+
     interface ChangeUser {
         void setName(String name);
         void setPersonalIdentificationNumber(String personalIdentificationNumber) throws UseException;
@@ -7,15 +7,18 @@ import se.sensera.banking.impl.RepositoryFactory;
 import se.sensera.banking.impl.TransactionServiceImpl;
 import se.sensera.banking.impl.UserServiceImpl;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 import java.util.Scanner;
 
-public class ClientServices {
-    private final UsersRepository usersRepository = (UsersRepository) RepositoryFactory.createRepository("UserRepository");
-    private final AccountsRepository accountRepository = (AccountsRepository) RepositoryFactory.createRepository("AccountRepository");
-    private final TransactionsRepository transactionRepository = (TransactionsRepository) RepositoryFactory.createRepository("TransactionRepository");
+public class ClientServices implements Closeable {
+    private final RepositoryFactory repositoryFactory = RepositoryFactory.fromConfiguration();
+    private final UsersRepository usersRepository = repositoryFactory.createUsersRepository();
+    private final AccountsRepository accountRepository = repositoryFactory.createAccountsRepository(usersRepository);
+    private final TransactionsRepository transactionRepository = repositoryFactory.createTransactionsRepository(usersRepository, accountRepository);
 
     private final UserServiceImpl userService = new UserServiceImpl(usersRepository);
     private final AccountService accountService = new AccountServiceImpl(usersRepository, accountRepository);
@@ -72,4 +75,8 @@ public class ClientServices {
         return transactionRepository;
     }
 
+    @Override
+    public void close() throws IOException {
+        repositoryFactory.close();
+    }
 }
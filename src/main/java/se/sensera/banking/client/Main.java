@@ -4,6 +4,7 @@ import se.sensera.banking.*;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.impl.*;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -14,7 +15,7 @@ import java.util.Scanner;
 
 
 public class Main {
-    public static void main(String[] args) throws UseException {
+    public static void main(String[] args) throws UseException, IOException {
         boolean run = true;
         Scanner input = new Scanner(System.in);
         ClientServices clientServices = new ClientServices();
@@ -30,5 +31,6 @@ public class Main {
                 default -> System.out.println("Wrong input");
             }
         }
+        clientServices.close();
     }
 }
@@ -9,5 +9,6 @@ public enum Activity {
     CREATE_TRANSACTION,
     SUM_TRANSACTION,
     FIND_ACCOUNT,
+    FIND_USER,
     ;
 }
@@ -12,6 +12,22 @@ public class UseException extends Exception {
         this.params = params;
     }
 
+    // Neither stack trace nor suppressed exceptions, only for withoutStackTrace
+    private UseException(Activity activity, UseExceptionType useExceptionType, Object[] params, boolean writableStackTrace) {
+        super(activity+" failed because "+ useExceptionType, null, false, writableStackTrace);
+        this.activity = activity;
+        this.useExceptionType = useExceptionType;
+        this.params = params;
+    }
+
+    /**
+     * Rejection without a stack trace. Business rejections are routine outcomes and filling in the stack trace is
+     * most of the cost of throwing one.
+     */
+    public static UseException withoutStackTrace(Activity activity, UseExceptionType useExceptionType, Object... params) {
+        return new UseException(activity, useExceptionType, params, false);
+    }
+
     public Activity getActivity() {
         return activity;
     }
@@ -1,20 +1,33 @@
 package se.sensera.banking.impl;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 import se.sensera.banking.Account;
 import se.sensera.banking.User;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.stream.Stream;
 
+/**
+ * Users of the account are kept in an immutable map from user id that is replaced on every change. Readers always see
+ * a consistent snapshot and membership checks are a single lookup.
+ */
 @Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class AccountImpl implements Account {
+    @EqualsAndHashCode.Include
     private final String id;
     private User owner;
     private String name;
     private boolean active;
-    private List<User> users = new LinkedList<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile Map<String, User> users = Collections.emptyMap();
 
     public AccountImpl(String id, User owner, String name, boolean active) {
         this.id = id;
@@ -24,16 +37,35 @@ public class AccountImpl implements Account {
     }
 
     public Stream<User> getUsers() {
-        return users.stream();
+        return users.values().stream();
+    }
+
+    public boolean hasUser(String userId) {
+        return users.containsKey(userId);
     }
 
     @Override
-    public void addUser(User user) {
-        users.add(user);
+    public synchronized void addUser(User user) {
+        Map<String, User> changed = new LinkedHashMap<>(users);
+        changed.put(user.getId(), user);
+        users = Collections.unmodifiableMap(changed);
     }
 
     @Override
-    public void removeUser(User user) {
-        users.remove(user);
+    public synchronized void removeUser(User user) {
+        if (users.containsKey(user.getId())) {
+            Map<String, User> changed = new LinkedHashMap<>(users);
+            changed.remove(user.getId());
+            users = Collections.unmodifiableMap(changed);
+        }
+    }
+
+    /**
+     * Membership test that is a lookup for an {@link AccountImpl} and a scan of the users for other accounts.
+     */
+    public static boolean hasUser(Account account, String userId) {
+        return account instanceof AccountImpl
+                ? ((AccountImpl) account).hasUser(userId)
+                : account.getUsers().anyMatch(user -> user.getId().equals(userId));
     }
 }
@@ -5,59 +5,167 @@ import se.sensera.banking.*;
 import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.bulk.BatchImporter;
+import se.sensera.banking.impl.bulk.ImportReport;
+import se.sensera.banking.impl.index.AccountNameIndex;
+import se.sensera.banking.impl.index.AccountsByUserIndex;
+import se.sensera.banking.impl.index.TrigramIndex;
+import se.sensera.banking.impl.index.UniqueNameIndex;
+import se.sensera.banking.impl.jfr.ServiceOperationEvent;
+import se.sensera.banking.impl.metrics.SlowOperationLog;
 import se.sensera.banking.utils.ListUtils;
 
-import java.util.Comparator;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @AllArgsConstructor
 public class AccountServiceImpl implements AccountService {
+    private static final int ACCOUNT_LOCK_STRIPES = 256;
+
     private final UsersRepository usersRepository;
     private final AccountsRepository accountsRepository;
+    private final SlowOperationLog slowOperations;
+    private final UniqueNameIndex accountNames = new UniqueNameIndex(this::existingAccountNames);
+    private final AccountsByUserIndex accountsByUser = new AccountsByUserIndex(this::existingAccounts);
+    private final AccountNameIndex accountsByName = new AccountNameIndex(this::existingAccounts);
+    private final TrigramIndex<Account> accountNameSearch = new TrigramIndex<>(this::existingAccounts, Account::getName);
+    // Changes of one account run one at a time, from reading the account to updating the indexes
+    private final Object[] accountLocks = Stream.generate(Object::new).limit(ACCOUNT_LOCK_STRIPES).toArray();
+
+    public AccountServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        this(usersRepository, accountsRepository, SlowOperationLog.DISABLED);
+    }
 
     @Override
     public Account createAccount(String userId, String accountName) throws UseException {
-        User user = getUserFromUserRepository(userId, Activity.CREATE_ACCOUNT);
-        Account account = new AccountImpl(UUID.randomUUID().toString(), user, accountName, true);
-        checkIfAccountNameIsUnique(accountName);
+        return ServiceOperationEvent.traced(Activity.CREATE_ACCOUNT, null, event -> {
+            User user = getUserFromUserRepository(userId, Activity.CREATE_ACCOUNT);
+            reserveAccountName(accountName);
+            Account account = new AccountImpl(UUID.randomUUID().toString(), user, accountName, true);
 
-        return accountsRepository.save(account);
+            try {
+                account = accountsRepository.save(account);
+            } catch (RuntimeException e) {
+                accountNames.release(accountName);
+                throw e;
+            }
+            accountsByUser.add(userId, account);
+            accountsByName.add(account);
+            accountNameSearch.update(account);
+            return account;
+        });
     }
 
-    private void checkIfAccountNameIsUnique(String accountName) throws UseException {
-        if (accountsRepository.all()
-                .anyMatch(account1 -> account1.getName().equals(accountName))) {
+    private void reserveAccountName(String accountName) throws UseException {
+        if (!accountNames.reserve(accountName)) {
             throw new UseException(Activity.CREATE_ACCOUNT, UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE);
         }
     }
 
+    /**
+     * Imports accounts from a file with one {@code ownerUserId;accountName} record per line, saving them
+     * {@code batchSize} at a time. Records with an unknown owner or a name already taken, in the repository or earlier
+     * in the file, are rejected. Owners are looked up among the users that exist when the import starts, they are
+     * read once instead of searched for every record.
+     */
+    public ImportReport importAccounts(Path file, int batchSize, Consumer<ImportReport> progress) throws IOException {
+        Map<String, User> owners = usersRepository.all().collect(Collectors.toMap(User::getId, user -> user, (first, second) -> second));
+        return new BatchImporter<Account>(2, batchSize, (fields, ids) -> parseAccount(fields, ids, owners),
+                this::saveAccounts, this::releaseAccountNames, progress).run(file);
+    }
+
+    private Account parseAccount(String[] fields, BatchImporter.IdSource ids, Map<String, User> owners) throws UseException {
+        String ownerId = fields[0].strip();
+        String accountName = fields[1].strip();
+        if (ownerId.isEmpty() || accountName.isEmpty())
+            throw new IllegalArgumentException("Owner and account name are required");
+        User owner = owners.get(ownerId);
+        if (owner == null)
+            throw new UseException(Activity.CREATE_ACCOUNT, UseExceptionType.USER_NOT_FOUND);
+        reserveAccountName(accountName);
+        return new AccountImpl(ids.nextId(), owner, accountName, true);
+    }
+
+    private void saveAccounts(List<Account> accounts) {
+        accountsRepository.saveAll(accounts);
+        accounts.forEach(account -> {
+            accountsByUser.add(account.getOwner().getId(), account);
+            accountsByName.add(account);
+            accountNameSearch.update(account);
+        });
+    }
+
+    private void releaseAccountNames(List<Account> accounts) {
+        accounts.forEach(account -> accountNames.release(account.getName()));
+    }
+
+    private Stream<String> existingAccountNames() {
+        return accountsRepository.all().map(Account::getName);
+    }
+
+    private Stream<Account> existingAccounts() {
+        return accountsRepository.all();
+    }
+
     @Override
     public Account changeAccount(String userId, String accountId, Consumer<ChangeAccount> changeAccountConsumer) throws UseException {
-        boolean[] save = {true};
-        Account account = getAccountFromAccountsRepository(accountId, Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NOT_FOUND);
+        return ServiceOperationEvent.traced(Activity.UPDATE_ACCOUNT, accountId, event -> {
+            synchronized (accountLock(accountId)) {
+                Account account = getAccountFromAccountsRepository(accountId, Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NOT_FOUND);
 
-        checkIfAccountBelongsToOwner(userId, account, Activity.UPDATE_ACCOUNT);
-        checkIfAccountIsActive(account, Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_ACTIVE);
+                checkIfAccountBelongsToOwner(userId, account, Activity.UPDATE_ACCOUNT);
+                checkIfAccountIsActive(account, Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_ACTIVE);
 
-        changeAccountConsumer.accept(name -> {
-            if (accountsRepository.all()
-                    .anyMatch(account1 -> account1.getName().equals(name))) {
-                save[0] = false;
-                throw new UseException(Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE);
-            }
-            if (account.getName().equals(name)) {
-                save[0] = false;
-            } else {
-                account.setName(name);
+                // The old name is kept until the new one is saved, a failed change gives back what it reserved
+                String oldName = account.getName();
+                String[] name = {oldName};
+                String[] reserved = {null};
+                try {
+                    changeAccountConsumer.accept(newName -> {
+                        if (name[0].equals(newName))
+                            return;
+                        if (accountNames.isSameName(oldName, newName)) {
+                            if (reserved[0] != null)
+                                accountNames.release(reserved[0]);
+                            reserved[0] = null;
+                        } else if (accountNames.rename(reserved[0], newName)) {
+                            reserved[0] = newName;
+                        } else {
+                            throw new UseException(Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE);
+                        }
+                        account.setName(newName);
+                        name[0] = newName;
+                    });
+                    if (!name[0].equals(oldName))
+                        accountsRepository.save(account);
+                } catch (RuntimeException e) {
+                    if (reserved[0] != null)
+                        accountNames.release(reserved[0]);
+                    if (!name[0].equals(oldName))
+                        account.setName(oldName);
+                    throw e;
+                }
+
+                if (!name[0].equals(oldName)) {
+                    if (reserved[0] != null)
+                        accountNames.release(oldName);
+                    accountsByUser.refresh(account);
+                    accountsByName.rename(oldName, account);
+                    accountNameSearch.update(account);
+                }
+                return account;
             }
         });
+    }
 
-        if (save[0]) {
-            accountsRepository.save(account);
-        }
-        return account;
+    private Object accountLock(String accountId) {
+        return accountLocks[Math.floorMod(accountId.hashCode(), accountLocks.length)];
     }
 
     private void checkIfAccountBelongsToOwner(String userId, Account account, Activity activity) throws UseException {
@@ -84,16 +192,24 @@ public class AccountServiceImpl implements AccountService {
 
     @Override
     public Account addUserToAccount(String userId, String accountId, String userIdToBeAssigned) throws UseException {
-        User newUser = getUserFromUserRepository(userIdToBeAssigned, Activity.UPDATE_ACCOUNT);
-        Account account = getAccountFromAccountsRepository(accountId, Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_FOUND);
+        return ServiceOperationEvent.traced(Activity.UPDATE_ACCOUNT, accountId, event -> {
+            synchronized (accountLock(accountId)) {
+                User newUser = getUserFromUserRepository(userIdToBeAssigned, Activity.UPDATE_ACCOUNT);
+                Account account = getAccountFromAccountsRepository(accountId, Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_FOUND);
 
-        checkIfAccountIsActive(account, Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NOT_ACTIVE);
-        checkIfNewAssignedUserIsOwner(userId, newUser.getId());
-        checkIfUserIsAssignedToAccount(newUser, account);
-        checkIfAccountBelongsToOwner(userId, account, Activity.UPDATE_ACCOUNT);
+                checkIfAccountIsActive(account, Activity.UPDATE_ACCOUNT, UseExceptionType.ACCOUNT_NOT_ACTIVE);
+                checkIfNewAssignedUserIsOwner(userId, newUser.getId());
+                checkIfUserIsAssignedToAccount(newUser, account);
+                checkIfAccountBelongsToOwner(userId, account, Activity.UPDATE_ACCOUNT);
 
-        account.addUser(newUser);
-        return accountsRepository.save(account);
+                account.addUser(newUser);
+                Account saved = accountsRepository.save(account);
+                accountsByUser.refresh(account);
+                accountsByName.add(account);
+                accountNameSearch.update(account);
+                return saved;
+            }
+        });
     }
 
     private void checkIfNewAssignedUserIsOwner(String userId, String userIdToBeAssigned) throws UseException {
@@ -103,74 +219,87 @@ public class AccountServiceImpl implements AccountService {
     }
 
     private void checkIfUserIsAssignedToAccount(User newUser, Account account) throws UseException {
-        if(account.getUsers()
-                .anyMatch(user1 -> user1.getId().equals(newUser.getId()))){
+        if (AccountImpl.hasUser(account, newUser.getId())) {
             throw new UseException(Activity.UPDATE_ACCOUNT, UseExceptionType.USER_ALREADY_ASSIGNED_TO_THIS_ACCOUNT);
         }
     }
 
     private void checkIfUserIsNotAssignedToAccount(String userIdToBeAssigned, Account account) throws UseException {
-        if(account.getUsers()
-                .noneMatch(user1 -> user1.getId().equals(userIdToBeAssigned))){
+        if (!AccountImpl.hasUser(account, userIdToBeAssigned)) {
             throw new UseException(Activity.UPDATE_ACCOUNT, UseExceptionType.USER_NOT_ASSIGNED_TO_THIS_ACCOUNT);
         }
     }
 
     @Override
     public Account removeUserFromAccount(String userId, String accountId, String userIdToBeAssigned) throws UseException {
-        Account account = getAccountFromAccountsRepository(accountId, Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_FOUND);
-        User user = getUserFromUserRepository(userIdToBeAssigned, Activity.UPDATE_ACCOUNT);
+        return ServiceOperationEvent.traced(Activity.UPDATE_ACCOUNT, accountId, event -> {
+            synchronized (accountLock(accountId)) {
+                Account account = getAccountFromAccountsRepository(accountId, Activity.UPDATE_ACCOUNT, UseExceptionType.NOT_FOUND);
+                User user = getUserFromUserRepository(userIdToBeAssigned, Activity.UPDATE_ACCOUNT);
 
-        checkIfAccountBelongsToOwner(userId, account, Activity.UPDATE_ACCOUNT);
-        checkIfUserIsNotAssignedToAccount(userIdToBeAssigned, account);
+                checkIfAccountBelongsToOwner(userId, account, Activity.UPDATE_ACCOUNT);
+                checkIfUserIsNotAssignedToAccount(userIdToBeAssigned, account);
 
-        account.removeUser(user);
-        return accountsRepository.save(account);
+                account.removeUser(user);
+                Account saved = accountsRepository.save(account);
+                accountsByUser.remove(userIdToBeAssigned, account);
+                accountsByUser.refresh(account);
+                accountsByName.add(account);
+                accountNameSearch.update(account);
+                return saved;
+            }
+        });
     }
 
     @Override
     public Account inactivateAccount(String userId, String accountId) throws UseException {
-        User user = getUserFromUserRepository(userId, Activity.INACTIVATE_ACCOUNT);
-        Account account = getAccountFromAccountsRepository(accountId, Activity.INACTIVATE_ACCOUNT, UseExceptionType.NOT_FOUND);
+        return ServiceOperationEvent.traced(Activity.INACTIVATE_ACCOUNT, accountId, event -> {
+            synchronized (accountLock(accountId)) {
+                User user = getUserFromUserRepository(userId, Activity.INACTIVATE_ACCOUNT);
+                Account account = getAccountFromAccountsRepository(accountId, Activity.INACTIVATE_ACCOUNT, UseExceptionType.NOT_FOUND);
 
-        checkIfAccountIsActive(account, Activity.INACTIVATE_ACCOUNT, UseExceptionType.NOT_ACTIVE);
-        checkIfAccountBelongsToOwner(user.getId(), account, Activity.INACTIVATE_ACCOUNT);
+                checkIfAccountIsActive(account, Activity.INACTIVATE_ACCOUNT, UseExceptionType.NOT_ACTIVE);
+                checkIfAccountBelongsToOwner(user.getId(), account, Activity.INACTIVATE_ACCOUNT);
 
-        account.setActive(false);
-        return accountsRepository.save(account);
+                account.setActive(false);
+                Account saved = accountsRepository.save(account);
+                accountsByUser.refresh(account);
+                accountsByName.add(account);
+                accountNameSearch.update(account);
+                return saved;
+            }
+        });
     }
 
     @Override
     public Stream<Account> findAccounts(String searchValue, String userId, Integer pageNumber, Integer pageSize, SortOrder sortOrder) throws UseException {
-        Stream<Account> account = accountsRepository.all();
-        switch (sortOrder) {
-            case AccountName -> {
-                return accountSortedByName(pageNumber, pageSize, account);
-            }
-            case None -> {
-                return accountMatchedByArgumentValues(searchValue, userId, pageNumber, pageSize, account);
-            }
-            default -> throw new UseException(Activity.FIND_ACCOUNT, UseExceptionType.NOT_FOUND);
-        }
+        return slowOperations.timed(Activity.FIND_ACCOUNT, () -> new Object[]{searchValue, userId, pageNumber, pageSize, sortOrder},
+                timer -> ServiceOperationEvent.traced(Activity.FIND_ACCOUNT, null, event -> {
+                    switch (sortOrder) {
+                        case AccountName -> {
+                            return ListUtils.applyPage(accountsByName.sorted(), pageNumber, pageSize);
+                        }
+                        case None -> {
+                            if (userId != null) {
+                                return ListUtils.applyPage(accountsByUser.accountsOf(userId), pageNumber, pageSize);
+                            }
+                            return accountMatchedByArgumentValues(searchValue, pageNumber, pageSize);
+                        }
+                        default -> throw new UseException(Activity.FIND_ACCOUNT, UseExceptionType.NOT_FOUND);
+                    }
+                }));
     }
 
-    private Stream<Account> accountSortedByName(Integer pageNumber, Integer pageSize, Stream<Account> account) {
-        if (pageNumber != null | pageSize != null) {
-            account = account.sorted(Comparator.comparing(Account::getName));
-            return ListUtils.applyPage(account, pageNumber, pageSize);
-        }
-        return account.sorted(Comparator.comparing(Account::getName));
+    @Override
+    public Stream<Account> findAccountsAfter(String afterName, Integer pageSize) {
+        return ServiceOperationEvent.tracedUnchecked(Activity.FIND_ACCOUNT, null,
+                event -> ListUtils.applyPage(accountsByName.after(afterName), null, pageSize));
     }
 
-    private Stream<Account> accountMatchedByArgumentValues(String searchValue, String userId, Integer pageNumber, Integer pageSize, Stream<Account> account) {
-        if (searchValue.equals("") & userId == null) {
-            return ListUtils.applyPage(account, pageNumber, pageSize);
-        }
-        if (userId != null) {
-            return account
-                    .filter(account1 -> account1.getOwner().getId().equals(userId) | account1.getUsers()
-                            .anyMatch(user -> user.getId().equals(userId)));
+    private Stream<Account> accountMatchedByArgumentValues(String searchValue, Integer pageNumber, Integer pageSize) {
+        if (searchValue.equals("")) {
+            return ListUtils.applyPage(accountsRepository.all(), pageNumber, pageSize);
         }
-        return account.filter(account1 -> account1.getName().toLowerCase().contains(searchValue));
+        return ListUtils.applyPage(accountNameSearch.search(searchValue), pageNumber, pageSize);
     }
 }
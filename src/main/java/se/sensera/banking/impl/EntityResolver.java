@@ -0,0 +1,38 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Turns the user and account ids kept by a {@link TransactionImpl} back into entities. Every call goes to the
+ * repositories so a transaction always sees the current user and account, put a
+ * {@link se.sensera.banking.impl.cache.CachingRepository} in front of them to skip repeated loads, it drops entries
+ * as they are saved.
+ */
+public class EntityResolver {
+    private final UsersRepository usersRepository;
+    private final AccountsRepository accountsRepository;
+
+    public EntityResolver(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        this.usersRepository = usersRepository;
+        this.accountsRepository = accountsRepository;
+    }
+
+    public User user(String userId) {
+        return resolve(userId, usersRepository::getEntityById, "user");
+    }
+
+    public Account account(String accountId) {
+        return resolve(accountId, accountsRepository::getEntityById, "account");
+    }
+
+    private static <E> E resolve(String id, Function<String, Optional<E>> repository, String kind) {
+        return repository.apply(id)
+                .orElseThrow(() -> new IllegalStateException("Transaction refers to unknown " + kind + " " + id));
+    }
+}
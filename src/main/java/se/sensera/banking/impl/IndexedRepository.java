@@ -0,0 +1,189 @@
+package se.sensera.banking.impl;
+
+import se.sensera.banking.*;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory repository with a hash index on id. Entities are kept in insertion order and saving an entity that is
+ * already stored replaces it in place.
+ * <p>
+ * Deleting only leaves a tombstone in the entity's slot. Once enough tombstones have piled up a background task
+ * compacts the list, so deletes never have to shift the remaining entities. Compaction moves at most
+ * {@code compactionBatch} slots per turn of the write lock, so readers and writers wait for one batch, never for the
+ * whole list.
+ */
+public class IndexedRepository<E extends Repository.Entity<String>> implements Repository<E, String> {
+    public static final int DEFAULT_COMPACTION_BATCH = 1024;
+
+    private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "indexed-repository-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<E> entities = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final Object compaction = new Object();
+    private final int compactionBatch;
+    private int tombstones;
+    // Compaction in progress: slots before compactWrite are compacted, slots from there to compactRead are tombstones
+    private boolean compacting;
+    private int compactRead;
+    private int compactWrite;
+
+    public IndexedRepository() {
+        this(DEFAULT_COMPACTION_BATCH);
+    }
+
+    public IndexedRepository(int compactionBatch) {
+        this.compactionBatch = compactionBatch;
+    }
+
+    @Override
+    public Optional<E> getEntityById(String id) {
+        if (id == null)
+            return Optional.empty();
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(id);
+            return slot == null ? Optional.empty() : Optional.of(entities.get(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Stream<E> all() {
+        lock.readLock().lock();
+        try {
+            Stream<E> stream = new ArrayList<>(entities).stream();
+            return tombstones == 0 ? stream : stream.filter(Objects::nonNull);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public E save(E entity) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(entity.getId());
+            if (slot != null) {
+                entities.set(slot, entity);
+            } else {
+                slots.put(entity.getId(), entities.size());
+                entities.add(entity);
+            }
+            return entity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<E> entities) {
+        lock.writeLock().lock();
+        try {
+            entities.forEach(this::save);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public E delete(E entity) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(entity.getId());
+            if (slot != null) {
+                entities.set(slot, null);
+                tombstones++;
+                if (tombstones >= Math.max(compactionBatch, slots.size() / 4) && compactionScheduled.compareAndSet(false, true))
+                    compactor.execute(this::compact);
+            }
+            return entity;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops all tombstones and renumbers the remaining slots, one batch at a time. Normally run by the background
+     * compactor.
+     */
+    public void compact() {
+        synchronized (compaction) {
+            compactionScheduled.set(false);
+            while (!compactStep()) {
+                Thread.yield();
+            }
+        }
+    }
+
+    // Moves the live entities of the next batch of slots down over the tombstones, returns true once all are moved
+    boolean compactStep() {
+        lock.writeLock().lock();
+        try {
+            if (!compacting) {
+                if (tombstones == 0)
+                    return true;
+                compacting = true;
+                compactRead = 0;
+                compactWrite = 0;
+            }
+            int end = Math.min(entities.size(), compactRead + Math.max(1, compactionBatch));
+            for (; compactRead < end; compactRead++) {
+                E entity = entities.get(compactRead);
+                if (entity == null)
+                    continue;
+                if (compactWrite != compactRead) {
+                    entities.set(compactWrite, entity);
+                    entities.set(compactRead, null);
+                    slots.put(entity.getId(), compactWrite);
+                }
+                compactWrite++;
+            }
+            if (compactRead < entities.size())
+                return false;
+            tombstones -= entities.size() - compactWrite;
+            entities.subList(compactWrite, entities.size()).clear();
+            compacting = false;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return tombstones;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static class UsersIndexedRepository extends IndexedRepository<User> implements UsersRepository {}
+
+    public static class AccountsIndexedRepository extends IndexedRepository<Account> implements AccountsRepository {}
+
+    public static class TransactionsIndexedRepository extends IndexedRepository<Transaction> implements TransactionsRepository {}
+}
@@ -1,13 +1,102 @@
 package se.sensera.banking.impl;
 
-public class RepositoryFactory extends RepositoryImpl {
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.TransactionsRepository;
+import se.sensera.banking.UsersRepository;
+import se.sensera.banking.impl.cache.CachingRepository;
+import se.sensera.banking.impl.storage.LsmRepository;
+import se.sensera.banking.impl.storage.LsmStore;
 
-    public static Object createRepository(String name) {
-        switch (name) {
-           case "UserRepository" -> {return new UsersRepositoryImpl();}
-            case "AccountRepository" -> {return new AccountsRepositoryImpl();}
-            case "TransactionRepository" -> {return new TransactionsRepositoryImpl();}
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates repositories with the backend and settings chosen by a {@link StorageConfiguration}. Stores opened by the
+ * factory are closed together with it.
+ */
+public class RepositoryFactory implements Closeable {
+    private final StorageConfiguration configuration;
+    private final List<Closeable> opened = new ArrayList<>();
+
+    public RepositoryFactory(StorageConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    public static RepositoryFactory fromConfiguration() {
+        return new RepositoryFactory(StorageConfiguration.load());
+    }
+
+    public UsersRepository createUsersRepository() {
+        StorageConfiguration.RepositorySettings settings = configuration.settingsFor(StorageConfiguration.USERS);
+        UsersRepository usersRepository = createUsersBackend(settings);
+        return settings.getCacheSize() > 0
+                ? new CachingRepository.UsersCachingRepository(usersRepository, settings.getCacheSize())
+                : usersRepository;
+    }
+
+    public AccountsRepository createAccountsRepository(UsersRepository usersRepository) {
+        StorageConfiguration.RepositorySettings settings = configuration.settingsFor(StorageConfiguration.ACCOUNTS);
+        AccountsRepository accountsRepository = createAccountsBackend(settings, usersRepository);
+        return settings.getCacheSize() > 0
+                ? new CachingRepository.AccountsCachingRepository(accountsRepository, settings.getCacheSize())
+                : accountsRepository;
+    }
+
+    public TransactionsRepository createTransactionsRepository(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        StorageConfiguration.RepositorySettings settings = configuration.settingsFor(StorageConfiguration.TRANSACTIONS);
+        TransactionsRepository transactionsRepository = createTransactionsBackend(settings, usersRepository, accountsRepository);
+        return settings.getCacheSize() > 0
+                ? new CachingRepository.TransactionsCachingRepository(transactionsRepository, settings.getCacheSize())
+                : transactionsRepository;
+    }
+
+    private UsersRepository createUsersBackend(StorageConfiguration.RepositorySettings settings) {
+        switch (settings.getBackend()) {
+            case IN_MEMORY -> {return new RepositoryImpl.UsersRepositoryImpl();}
+            case INDEXED -> {return new IndexedRepository.UsersIndexedRepository();}
+            default -> {return new LsmRepository.UsersLsmRepository(openStore(settings));}
+        }
+    }
+
+    private AccountsRepository createAccountsBackend(StorageConfiguration.RepositorySettings settings, UsersRepository usersRepository) {
+        switch (settings.getBackend()) {
+            case IN_MEMORY -> {return new RepositoryImpl.AccountsRepositoryImpl();}
+            case INDEXED -> {return new IndexedRepository.AccountsIndexedRepository();}
+            default -> {return new LsmRepository.AccountsLsmRepository(openStore(settings), usersRepository);}
+        }
+    }
+
+    private TransactionsRepository createTransactionsBackend(StorageConfiguration.RepositorySettings settings,
+                                                             UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        switch (settings.getBackend()) {
+            case IN_MEMORY -> {return new RepositoryImpl.TransactionsRepositoryImpl();}
+            case INDEXED -> {return new IndexedRepository.TransactionsIndexedRepository();}
+            default -> {return new LsmRepository.TransactionsLsmRepository(openStore(settings), usersRepository, accountsRepository);}
+        }
+    }
+
+    private LsmStore openStore(StorageConfiguration.RepositorySettings settings) {
+        try {
+            LsmStore store = new LsmStore(settings.getDirectory(), settings.getMemtableSize(), settings.getCompactionThreshold(),
+                    settings.isSync(), settings.getBackend() == StorageConfiguration.Backend.MMAP);
+            synchronized (opened) {
+                opened.add(store);
+            }
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open store " + settings.getDirectory(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (opened) {
+            for (Closeable closeable : opened)
+                closeable.close();
+            opened.clear();
         }
-        throw new IllegalArgumentException("doesn't exist " + name);
     }
 }
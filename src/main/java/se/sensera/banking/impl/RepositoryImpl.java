@@ -3,9 +3,9 @@ package se.sensera.banking.impl;
 import se.sensera.banking.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class RepositoryImpl<E extends Repository.Entity<String>> implements Repository<E, String> {
@@ -30,14 +30,14 @@ public class RepositoryImpl<E extends Repository.Entity<String>> implements Repo
         return entity;
     }
 
+    @Override
+    public void saveAll(Collection<E> entities) {
+        this.entities.addAll(entities);
+    }
+
     @Override
     public E delete(E entity) {
-        List<E> tmp = entities.stream()
-                .parallel()
-                .filter(e -> !e.getId().equals(e.getId()))
-                .collect(Collectors.toList());
-        entities.clear();
-        entities.addAll(tmp);
+        entities.removeIf(e -> e.getId().equals(entity.getId()));
         return entity;
     }
 
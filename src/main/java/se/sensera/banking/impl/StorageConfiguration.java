@@ -0,0 +1,111 @@
+package se.sensera.banking.impl;
+
+import lombok.Value;
+import se.sensera.banking.impl.storage.LsmStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Storage settings read from properties. Every key can be given for all repositories, for example
+ * {@code banking.storage.backend=indexed}, or for a single one, for example {@code banking.storage.users.backend=mmap}.
+ * <p>
+ * Keys: {@code backend} (in-memory, indexed, log-structured, mmap), {@code directory}, {@code sync},
+ * {@code memtable-size}, {@code compaction-threshold} and {@code cache-size} (entities cached in front of the
+ * backend, 0 turns the cache off).
+ */
+public class StorageConfiguration {
+    public static final String PREFIX = "banking.storage.";
+    public static final String CONFIG_FILE_PROPERTY = "banking.config";
+    public static final String DEFAULT_CONFIG_RESOURCE = "banking.properties";
+
+    public static final String USERS = "users";
+    public static final String ACCOUNTS = "accounts";
+    public static final String TRANSACTIONS = "transactions";
+
+    private final Properties properties;
+
+    public StorageConfiguration(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Reads the file named by the {@value #CONFIG_FILE_PROPERTY} system property, or {@value #DEFAULT_CONFIG_RESOURCE}
+     * from the class path, and lets system properties override what it says.
+     */
+    public static StorageConfiguration load() {
+        Properties properties = new Properties();
+        String file = System.getProperty(CONFIG_FILE_PROPERTY);
+        try (InputStream in = file != null
+                ? Files.newInputStream(Paths.get(file))
+                : StorageConfiguration.class.getClassLoader().getResourceAsStream(DEFAULT_CONFIG_RESOURCE)) {
+            if (in != null)
+                properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read storage configuration " + file, e);
+        }
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith(PREFIX))
+                .forEach(name -> properties.setProperty(name, System.getProperty(name)));
+        return new StorageConfiguration(properties);
+    }
+
+    public RepositorySettings settingsFor(String repository) {
+        String directory = properties.getProperty(PREFIX + repository + ".directory");
+        return new RepositorySettings(
+                Backend.parse(property(repository, "backend", Backend.IN_MEMORY.getName())),
+                directory != null ? Paths.get(directory.trim()) : Paths.get(property(null, "directory", "data"), repository),
+                Boolean.parseBoolean(property(repository, "sync", "false")),
+                Long.parseLong(property(repository, "memtable-size", String.valueOf(LsmStore.DEFAULT_MEMTABLE_LIMIT))),
+                Integer.parseInt(property(repository, "compaction-threshold", String.valueOf(LsmStore.DEFAULT_COMPACTION_THRESHOLD))),
+                Integer.parseInt(property(repository, "cache-size", "0")));
+    }
+
+    private String property(String repository, String key, String defaultValue) {
+        String value = repository != null ? properties.getProperty(PREFIX + repository + "." + key) : null;
+        if (value == null)
+            value = properties.getProperty(PREFIX + key, defaultValue);
+        return value != null ? value.trim() : null;
+    }
+
+    public enum Backend {
+        IN_MEMORY("in-memory"),
+        INDEXED("indexed"),
+        LOG_STRUCTURED("log-structured"),
+        MMAP("mmap"),
+        ;
+
+        private final String name;
+
+        Backend(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Backend parse(String name) {
+            return Arrays.stream(values())
+                    .filter(backend -> backend.name.equalsIgnoreCase(name) || backend.name().equalsIgnoreCase(name))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("doesn't exist " + name));
+        }
+    }
+
+    @Value
+    public static class RepositorySettings {
+        Backend backend;
+        Path directory;
+        boolean sync;
+        long memtableSize;
+        int compactionThreshold;
+        int cacheSize;
+    }
+}
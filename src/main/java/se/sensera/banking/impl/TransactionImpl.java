@@ -2,18 +2,48 @@ package se.sensera.banking.impl;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import se.sensera.banking.Account;
 import se.sensera.banking.Transaction;
 import se.sensera.banking.User;
 
 import java.util.Date;
 
+/**
+ * Keeps only the ids of the user and account, {@link #getUser()} and {@link #getAccount()} look them up when asked.
+ */
 @Data
 @AllArgsConstructor
 public class TransactionImpl implements Transaction {
    private final String id;
    private Date created;
-   private User user;
-   private Account account;
+   private String userId;
+   private String accountId;
    private double amount;
+   @EqualsAndHashCode.Exclude
+   @ToString.Exclude
+   private final transient EntityResolver resolver;
+
+   @Override
+   public User getUser() {
+      return resolver.user(userId);
+   }
+
+   @Override
+   public Account getAccount() {
+      return resolver.account(accountId);
+   }
+
+   public static String userIdOf(Transaction transaction) {
+      return transaction instanceof TransactionImpl
+              ? ((TransactionImpl) transaction).getUserId()
+              : transaction.getUser().getId();
+   }
+
+   public static String accountIdOf(Transaction transaction) {
+      return transaction instanceof TransactionImpl
+              ? ((TransactionImpl) transaction).getAccountId()
+              : transaction.getAccount().getId();
+   }
 }
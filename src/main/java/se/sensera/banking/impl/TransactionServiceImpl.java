@@ -6,6 +6,10 @@ import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.HandleException;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.jfr.ServiceOperationEvent;
+import se.sensera.banking.impl.metrics.OperationTimer;
+import se.sensera.banking.impl.metrics.SlowOperation;
+import se.sensera.banking.impl.metrics.SlowOperationLog;
 
 import java.time.*;
 import java.time.format.DateTimeFormatter;
@@ -16,86 +20,142 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 public class TransactionServiceImpl implements TransactionService {
+    private static final DateTimeFormatter CREATED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final int WITHDRAWAL_LOCK_STRIPES = 256;
+
     private final UsersRepository usersRepository;
     private final AccountsRepository accountsRepository;
     private final TransactionsRepository transactionsRepository;
-    private final List<Consumer<Transaction>> listMonitor = new LinkedList<>();
+    private final EntityResolver entityResolver;
+    private final SlowOperationLog slowOperations;
+    private final List<Consumer<Transaction>> listMonitor = new CopyOnWriteArrayList<>();
+    private final Object[] withdrawalLocks = new Object[WITHDRAWAL_LOCK_STRIPES];
 
     public TransactionServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository, TransactionsRepository transactionsRepository) {
+        this(usersRepository, accountsRepository, transactionsRepository, new EntityResolver(usersRepository, accountsRepository));
+    }
+
+    public TransactionServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository, TransactionsRepository transactionsRepository,
+                                  EntityResolver entityResolver) {
+        this(usersRepository, accountsRepository, transactionsRepository, entityResolver, SlowOperationLog.DISABLED);
+    }
+
+    public TransactionServiceImpl(UsersRepository usersRepository, AccountsRepository accountsRepository, TransactionsRepository transactionsRepository,
+                                  EntityResolver entityResolver, SlowOperationLog slowOperations) {
         this.usersRepository = usersRepository;
         this.accountsRepository = accountsRepository;
         this.transactionsRepository = transactionsRepository;
+        this.entityResolver = entityResolver;
+        this.slowOperations = slowOperations;
+        for (int i = 0; i < withdrawalLocks.length; i++)
+            withdrawalLocks[i] = new Object();
     }
 
     @Override
     public Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException {
-        User user = getUserFromUserRepository(userId);
-        Account account = getAccountFromAccountsRepository(accountId);
+        return tryCreateTransaction(created, userId, accountId, amount).orElseThrow();
+    }
+
+    @Override
+    public TransactionResult tryCreateTransaction(String created, String userId, String accountId, double amount) {
+        return slowOperations.timedUnchecked(Activity.CREATE_TRANSACTION, () -> new Object[]{created, userId, accountId, amount}, TransactionResult::getRejection,
+                timer -> ServiceOperationEvent.tracedUnchecked(Activity.CREATE_TRANSACTION, accountId,
+                        event -> createTransaction(created, userId, accountId, amount, event, timer)));
+    }
+
+    private TransactionResult createTransaction(String created, String userId, String accountId, double amount,
+                                                ServiceOperationEvent event, OperationTimer timer) {
+        Optional<User> user = usersRepository.getEntityById(userId);
+        if (user.isEmpty())
+            return rejected(event, UseExceptionType.USER_NOT_FOUND);
+        Optional<Account> account = accountsRepository.getEntityById(accountId);
+        timer.phase(SlowOperation.Phase.LOOKUP);
+        if (account.isEmpty())
+            return rejected(event, UseExceptionType.ACCOUNT_NOT_FOUND);
         Date date = formatStringToDate(created);
-        checkIfUserIsOwnerOfAccount(userId, user, account);
-        checkIfFundsIsEnoughForAccount(date, accountId, amount);
+        boolean allowed = isUserOwnerOfAccount(userId, user.get(), account.get());
+        timer.phase(SlowOperation.Phase.VALIDATION);
+        if (!allowed)
+            return rejected(event, UseExceptionType.NOT_ALLOWED);
+        if (amount >= 0)
+            return fundedTransaction(date, userId, accountId, amount, event, timer);
+        // Withdrawals from one account are serialized from the funds check to the save, otherwise two of them could
+        // both pass the check and overdraw the account together. Deposits can only add funds and need no lock.
+        synchronized (withdrawalLocks[Math.floorMod(accountId.hashCode(), withdrawalLocks.length)]) {
+            return fundedTransaction(date, userId, accountId, amount, event, timer);
+        }
+    }
 
-        Transaction transaction = new TransactionImpl(UUID.randomUUID().toString(), date, user, account, amount);
+    private TransactionResult fundedTransaction(Date date, String userId, String accountId, double amount,
+                                                ServiceOperationEvent event, OperationTimer timer) {
+        boolean funded = isFundsEnoughForAccount(date, accountId, amount, event);
+        timer.phase(SlowOperation.Phase.FUNDS_CHECK);
+        if (!funded)
+            return rejected(event, UseExceptionType.NOT_FUNDED);
+
+        Transaction transaction = new TransactionImpl(UUID.randomUUID().toString(), date, userId, accountId, amount, entityResolver);
         listMonitor.forEach(transactionConsumer -> transactionConsumer.accept(transaction));
+        timer.phase(SlowOperation.Phase.MONITOR_FAN_OUT);
 
-        return transactionsRepository.save(transaction);
+        Transaction saved = transactionsRepository.save(transaction);
+        timer.phase(SlowOperation.Phase.SAVE);
+        return TransactionResult.success(saved);
     }
 
-    private void checkIfFundsIsEnoughForAccount(Date date, String accountId, double amount) throws UseException {
-        //Around 200 millis faster
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        try {
-            if (executorService.submit(() -> countSum(date, accountId) + amount < 0).get()) {
-                throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_FUNDED);
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-        }
+    private static TransactionResult rejected(ServiceOperationEvent event, UseExceptionType useExceptionType) {
+        event.rejected(useExceptionType);
+        return TransactionResult.rejected(useExceptionType);
+    }
+
+    // Runs on the calling thread, it already holds the withdrawal lock and a failing sum fails the transaction
+    private boolean isFundsEnoughForAccount(Date date, String accountId, double amount, ServiceOperationEvent event) {
+        return countSum(date, accountId, event) + amount >= 0;
     }
 
     //Performance boost
     public double countSum(Date date, String accountId) {
-        return transactionsRepository.all()
-                .filter(transaction -> transaction.getAccount().getId().equals(accountId) && (transaction.getCreated().before(date) || transaction.getCreated().equals(date)))
+        return countSum(date, accountId, ServiceOperationEvent.UNTRACED);
+    }
+
+    private double countSum(Date date, String accountId, ServiceOperationEvent event) {
+        return event.countScanned(transactionsRepository.all())
+                .filter(transaction -> TransactionImpl.accountIdOf(transaction).equals(accountId) && (transaction.getCreated().before(date) || transaction.getCreated().equals(date)))
                 .mapToDouble(Transaction::getAmount).sum();
     }
 
-    private void checkIfUserIsOwnerOfAccount(String userId, User user, Account account) throws UseException {
-        if (!account.getOwner().equals(user) &
-                account.getUsers().noneMatch(user1 -> user1.getId().equals(userId))) {
-            throw new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_ALLOWED);
-        }
+    private boolean isUserOwnerOfAccount(String userId, User user, Account account) {
+        return account.getOwner().equals(user) || AccountImpl.hasUser(account, userId);
     }
 
     private Date formatStringToDate(String created) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-        LocalDateTime localDateTime = LocalDateTime.parse(created, formatter);
+        LocalDateTime localDateTime = LocalDateTime.parse(created, CREATED_FORMAT);
         return Date.from(localDateTime.atZone(ZoneId.systemDefault()).toInstant());
     }
 
-    private User getUserFromUserRepository(String userId) throws UseException {
-        return usersRepository.getEntityById(userId).
-                orElseThrow(() -> new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.USER_NOT_FOUND));
-    }
-
     private Account getAccountFromAccountsRepository(String accountId) throws UseException {
         return accountsRepository.getEntityById(accountId).
-                orElseThrow(() -> new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.ACCOUNT_NOT_FOUND));
+                orElseThrow(() -> UseException.withoutStackTrace(Activity.CREATE_TRANSACTION, UseExceptionType.ACCOUNT_NOT_FOUND));
     }
 
     @Override
     public double sum(String created, String userId, String accountId) throws UseException {
-        Account account = getAccountFromAccountsRepository(accountId);
-        checkIfUsersExistInAccount(userId, account);
-        Date date = formatStringToDate(created);
-
-        return countSum(date, accountId);
+        return slowOperations.timed(Activity.SUM_TRANSACTION, () -> new Object[]{created, userId, accountId},
+                timer -> ServiceOperationEvent.traced(Activity.SUM_TRANSACTION, accountId, event -> {
+                    Account account = getAccountFromAccountsRepository(accountId);
+                    timer.phase(SlowOperation.Phase.LOOKUP);
+                    checkIfUsersExistInAccount(userId, account);
+                    Date date = formatStringToDate(created);
+                    timer.phase(SlowOperation.Phase.VALIDATION);
+
+                    double sum = countSum(date, accountId, event);
+                    timer.phase(SlowOperation.Phase.FUNDS_CHECK);
+                    return sum;
+                }));
     }
 
     private void checkIfUsersExistInAccount(String userId, Account account) throws UseException {
-        if (!account.getOwner().getId().equals(userId)
-                && account.getUsers().noneMatch(user -> user.getId().equals(userId))) {
-            throw new UseException(Activity.SUM_TRANSACTION, UseExceptionType.NOT_ALLOWED);
+        if (!account.getOwner().getId().equals(userId) && !AccountImpl.hasUser(account, userId)) {
+            throw UseException.withoutStackTrace(Activity.SUM_TRANSACTION, UseExceptionType.NOT_ALLOWED);
         }
     }
 
@@ -2,12 +2,14 @@ package se.sensera.banking.impl;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
-import lombok.Value;
+import lombok.EqualsAndHashCode;
 import se.sensera.banking.User;
 
 @Data
 @AllArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class UserImpl implements User {
+    @EqualsAndHashCode.Include
     private final String id;
     private String name;
     private String personalIdentificationNumber;
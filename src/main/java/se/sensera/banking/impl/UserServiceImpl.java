@@ -7,57 +7,123 @@ import se.sensera.banking.UsersRepository;
 import se.sensera.banking.exceptions.Activity;
 import se.sensera.banking.exceptions.UseException;
 import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.bulk.BatchImporter;
+import se.sensera.banking.impl.bulk.ImportReport;
+import se.sensera.banking.impl.index.BkTreeIndex;
+import se.sensera.banking.impl.index.TrigramIndex;
+import se.sensera.banking.impl.index.UniqueNameIndex;
+import se.sensera.banking.impl.jfr.ServiceOperationEvent;
 import se.sensera.banking.utils.ListUtils;
+import se.sensera.banking.utils.Page;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
 import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @AllArgsConstructor
 public class UserServiceImpl implements UserService {
+    static final int PARALLEL_THRESHOLD = 50_000;
+
     private final UsersRepository usersRepository;
+    private final TrigramIndex<User> userNameSearch = new TrigramIndex<>(this::existingUsers, User::getName);
+    private final BkTreeIndex<User> userNameFuzzySearch = new BkTreeIndex<>(this::existingUsers, User::getName);
+    private final UniqueNameIndex personalIdentificationNumbers = new UniqueNameIndex(this::existingPersonalIdentificationNumbers, String::strip);
 
     @Override
     public User createUser(String name, String personalIdentificationNumber) throws UseException {
-        if (checkIfPersonalIdentificationNumberIsUnique(personalIdentificationNumber)) {
+        return ServiceOperationEvent.traced(Activity.CREATE_USER, null, event -> {
+            if (!personalIdentificationNumbers.reserve(personalIdentificationNumber)) {
+                throw new UseException(Activity.CREATE_USER, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
+            }
+            User user = new UserImpl(UUID.randomUUID().toString(), name, personalIdentificationNumber, true);
+
+            User saved;
+            try {
+                saved = usersRepository.save(user);
+            } catch (RuntimeException e) {
+                personalIdentificationNumbers.release(personalIdentificationNumber);
+                throw e;
+            }
+            userNameSearch.update(user);
+            userNameFuzzySearch.update(user);
+            return saved;
+        });
+    }
+
+    /**
+     * Imports users from a file with one {@code name;personalIdentificationNumber} record per line, saving them
+     * {@code batchSize} at a time. Personal identification numbers already taken, in the repository or earlier in the
+     * file, are rejected.
+     */
+    public ImportReport importUsers(Path file, int batchSize, Consumer<ImportReport> progress) throws IOException {
+        return new BatchImporter<>(2, batchSize, this::parseUser, this::saveUsers, this::releaseUsers, progress).run(file);
+    }
+
+    private User parseUser(String[] fields, BatchImporter.IdSource ids) throws UseException {
+        String name = fields[0].strip();
+        String personalIdentificationNumber = fields[1].strip();
+        if (name.isEmpty() || personalIdentificationNumber.isEmpty())
+            throw new IllegalArgumentException("Name and personal identification number are required");
+        if (!personalIdentificationNumbers.reserve(personalIdentificationNumber))
             throw new UseException(Activity.CREATE_USER, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
-        }
-        User user = new UserImpl(UUID.randomUUID().toString(), name, personalIdentificationNumber, true);
+        return new UserImpl(ids.nextId(), name, personalIdentificationNumber, true);
+    }
+
+    private void saveUsers(List<User> users) {
+        usersRepository.saveAll(users);
+        users.forEach(user -> {
+            userNameSearch.update(user);
+            userNameFuzzySearch.update(user);
+        });
+    }
 
-        return usersRepository.save(user);
+    private void releaseUsers(List<User> users) {
+        users.forEach(user -> personalIdentificationNumbers.release(user.getPersonalIdentificationNumber()));
     }
 
-    private boolean checkIfPersonalIdentificationNumberIsUnique(String personalIdentificationNumber) {
-        return (usersRepository.all()
-                .anyMatch(user -> user.getPersonalIdentificationNumber().equals(personalIdentificationNumber)));
+    private Stream<User> existingUsers() {
+        return usersRepository.all();
+    }
+
+    private Stream<String> existingPersonalIdentificationNumbers() {
+        return usersRepository.all().map(User::getPersonalIdentificationNumber);
     }
 
     @Override
     public User changeUser(String userId, Consumer<ChangeUser> changeUser) throws UseException {
-        boolean[] ifPersonalIdIsUnique = {true};
-        User user = getUserFromUserRepository(userId);
+        return ServiceOperationEvent.traced(Activity.UPDATE_USER, null, event -> {
+            boolean[] ifPersonalIdIsUnique = {true};
+            User user = getUserFromUserRepository(userId);
 
-        changeUser.accept(new ChangeUser() {
-            @Override
-            public void setName(String name) {
-                user.setName(name);
-            }
+            changeUser.accept(new ChangeUser() {
+                @Override
+                public void setName(String name) {
+                    user.setName(name);
+                }
 
-            @Override
-            public void setPersonalIdentificationNumber(String personalIdentificationNumber) throws UseException {
-                if (checkIfPersonalIdentificationNumberIsUnique(personalIdentificationNumber)) {
-                    ifPersonalIdIsUnique[0] = false;
-                    throw new UseException(Activity.UPDATE_USER, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
+                @Override
+                public void setPersonalIdentificationNumber(String personalIdentificationNumber) throws UseException {
+                    if (!personalIdentificationNumbers.rename(user.getPersonalIdentificationNumber(), personalIdentificationNumber)) {
+                        ifPersonalIdIsUnique[0] = false;
+                        throw new UseException(Activity.UPDATE_USER, UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE);
+                    }
+                    user.setPersonalIdentificationNumber(personalIdentificationNumber);
                 }
-                user.setPersonalIdentificationNumber(personalIdentificationNumber);
+            });
+            if (ifPersonalIdIsUnique[0]) {
+                usersRepository.save(user);
+                userNameSearch.update(user);
+                userNameFuzzySearch.update(user);
             }
+            return user;
         });
-        if (ifPersonalIdIsUnique[0]) {
-            usersRepository.save(user);
-        }
-        return user;
     }
 
     private User getUserFromUserRepository(String userId) throws UseException {
@@ -67,31 +133,69 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User inactivateUser(String userId) throws UseException {
-        User user = getUserFromUserRepository(userId);
-        user.setActive(false);
+        return ServiceOperationEvent.traced(Activity.UPDATE_USER, null, event -> {
+            User user = getUserFromUserRepository(userId);
+            user.setActive(false);
 
-        usersRepository.save(user);
-        return user;
+            usersRepository.save(user);
+            userNameSearch.update(user);
+            userNameFuzzySearch.update(user);
+            return user;
+        });
     }
 
     @Override
     public Optional<User> getUser(String userId) {
-        return usersRepository.getEntityById(userId);
+        return ServiceOperationEvent.tracedUnchecked(Activity.FIND_USER, null, event -> usersRepository.getEntityById(userId));
     }
 
     @Override
     public Stream<User> find(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder) {
-        Stream<User> user = ListUtils.applyPage(usersRepository.all(), pageNumber, pageSize)
-                .filter(user1 -> user1.getName().toLowerCase().contains(searchString) && user1.isActive());
+        Comparator<User> comparator = comparatorFor(sortOrder);
+        if (comparator != null && pageSize != null)
+            return findPage(searchString, pageNumber, pageSize, sortOrder).getItems().stream();
+        return ServiceOperationEvent.tracedUnchecked(Activity.FIND_USER, null, event -> {
+            Stream<User> users = activeMatches(searchString);
+            if (comparator != null)
+                users = users.sorted(comparator);
+            return ListUtils.applyPage(users, pageNumber, pageSize);
+        });
+    }
+
+    @Override
+    public Page<User> findPage(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder) {
+        return ServiceOperationEvent.tracedUnchecked(Activity.FIND_USER, null, event -> {
+            Comparator<User> comparator = comparatorFor(sortOrder);
+            Stream<User> users = activeMatches(searchString);
+            if (comparator == null)
+                return ListUtils.countedPage(users, pageNumber, pageSize);
+            if (pageSize == null)
+                return ListUtils.countedPage(users.sorted(comparator), pageNumber, null);
+            return users.collect(ListUtils.sortedPage(comparator, pageNumber == null ? 0 : pageNumber, pageSize));
+        });
+    }
+
+    @Override
+    public Stream<User> findSimilar(String name, int maxDistance, Integer pageSize) {
+        return ServiceOperationEvent.tracedUnchecked(Activity.FIND_USER, null, event -> {
+            Stream<User> users = userNameFuzzySearch.search(name, maxDistance).filter(User::isActive);
+            return ListUtils.applyPage(users, null, pageSize);
+        });
+    }
 
+    // Filters before any paging, large sized sources are filtered and ranked in parallel
+    private Stream<User> activeMatches(String searchString) {
+        Stream<User> candidates = searchString.isEmpty() ? usersRepository.all() : userNameSearch.search(searchString);
+        Spliterator<User> spliterator = candidates.spliterator();
+        boolean parallel = spliterator.getExactSizeIfKnown() >= PARALLEL_THRESHOLD;
+        return StreamSupport.stream(spliterator, parallel).filter(User::isActive);
+    }
+
+    private static Comparator<User> comparatorFor(SortOrder sortOrder) {
         switch (sortOrder) {
-            case Name -> {
-                return user.sorted(Comparator.comparing(User::getName));
-            }
-            case PersonalId -> {
-                return user.sorted(Comparator.comparing(User::getPersonalIdentificationNumber));
-            }
+            case Name -> {return Comparator.comparing(User::getName).thenComparing(User::getId);}
+            case PersonalId -> {return Comparator.comparing(User::getPersonalIdentificationNumber).thenComparing(User::getId);}
+            default -> {return null;}
         }
-        return user;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package se.sensera.banking.impl.bulk;
+
+import se.sensera.banking.exceptions.UseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Streams records from a file and hands them to a parser one at a time, valid entities are collected and saved in
+ * batches. Records are lines of fields separated by {@code ;}, blank lines and lines starting with {@code #} are
+ * skipped.
+ * <p>
+ * A record the parser turns down with a {@link UseException} is rejected with the exception type as reason. A record
+ * with the wrong number of fields, or one the parser refuses with an {@link IllegalArgumentException}, is rejected
+ * as {@value #MALFORMED}.
+ * <p>
+ * When the import stops half way, because the file can't be read or a batch can't be saved, the entities parsed but
+ * not saved are handed to {@code discardBatch} so whatever the parser reserved for them can be released.
+ */
+public class BatchImporter<E> {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final String MALFORMED = "MALFORMED";
+
+    private final int fieldCount;
+    private final int batchSize;
+    private final RecordParser<E> parser;
+    private final Consumer<List<E>> saveBatch;
+    private final Consumer<List<E>> discardBatch;
+    private final Consumer<ImportReport> progress;
+    private final SplittableRandom random = new SplittableRandom(new SecureRandom().nextLong());
+
+    public BatchImporter(int fieldCount, int batchSize, RecordParser<E> parser, Consumer<List<E>> saveBatch,
+                         Consumer<List<E>> discardBatch, Consumer<ImportReport> progress) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be positive " + batchSize);
+        this.fieldCount = fieldCount;
+        this.batchSize = batchSize;
+        this.parser = parser;
+        this.saveBatch = saveBatch;
+        this.discardBatch = discardBatch;
+        this.progress = progress;
+    }
+
+    public ImportReport run(Path file) throws IOException {
+        ImportReport report = new ImportReport();
+        List<E> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long line = 0;
+            String record;
+            while ((record = reader.readLine()) != null) {
+                line++;
+                if (record.isBlank() || record.startsWith("#"))
+                    continue;
+                report.recordRead();
+                String[] fields = record.split(";", -1);
+                if (fields.length != fieldCount) {
+                    report.reject(line, record, MALFORMED);
+                    continue;
+                }
+                try {
+                    batch.add(parser.parse(fields, this::nextId));
+                } catch (UseException e) {
+                    report.reject(line, record, e.getUserExceptionType().name());
+                } catch (IllegalArgumentException e) {
+                    report.reject(line, record, MALFORMED);
+                }
+                if (batch.size() >= batchSize)
+                    flush(batch, report);
+            }
+            if (!batch.isEmpty())
+                flush(batch, report);
+        } catch (IOException | RuntimeException e) {
+            if (!batch.isEmpty())
+                discardBatch.accept(batch);
+            throw e;
+        }
+        return report;
+    }
+
+    private void flush(List<E> batch, ImportReport report) {
+        saveBatch.accept(batch);
+        report.batchSaved(batch.size());
+        batch.clear();
+        progress.accept(report);
+    }
+
+    // Random version 4 ids from a generator seeded once per import instead of a secure random draw per entity
+    private String nextId() {
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    public interface RecordParser<E> {
+        E parse(String[] fields, IdSource ids) throws UseException;
+    }
+
+    public interface IdSource {
+        String nextId();
+    }
+}
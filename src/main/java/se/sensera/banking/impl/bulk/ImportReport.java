@@ -0,0 +1,54 @@
+package se.sensera.banking.impl.bulk;
+
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk import. Counts cover the whole file, only the first {@link #MAX_REJECTIONS_KEPT} rejected
+ * records are kept with their reason.
+ */
+@Getter
+public class ImportReport {
+    public static final int MAX_REJECTIONS_KEPT = 1000;
+
+    private long records;
+    private long imported;
+    private long rejected;
+    private long batches;
+    private final List<Rejection> rejections = new ArrayList<>();
+
+    void recordRead() {
+        records++;
+    }
+
+    void batchSaved(int size) {
+        imported += size;
+        batches++;
+    }
+
+    void reject(long line, String record, String reason) {
+        rejected++;
+        if (rejections.size() < MAX_REJECTIONS_KEPT)
+            rejections.add(new Rejection(line, record, reason));
+    }
+
+    public List<Rejection> getRejections() {
+        return Collections.unmodifiableList(rejections);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d records, %d imported in %d batches, %d rejected", records, imported, batches, rejected);
+    }
+
+    @Value
+    public static class Rejection {
+        long line;
+        String record;
+        String reason;
+    }
+}
@@ -0,0 +1,15 @@
+package se.sensera.banking.impl.cache;
+
+import lombok.Value;
+
+@Value
+public class CacheStats {
+    long hitCount;
+    long missCount;
+    long evictionCount;
+
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+}
@@ -0,0 +1,95 @@
+package se.sensera.banking.impl.cache;
+
+import se.sensera.banking.*;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache for {@link Repository#getEntityById} in front of another repository. Saves and deletes go
+ * straight to the underlying repository and drop the cached entity, {@link #all()} is never cached.
+ */
+public class CachingRepository<E extends Repository.Entity<String>> implements Repository<E, String> {
+    private final Repository<E, String> repository;
+    private final TinyLfuCache<String, E> cache;
+    private final AtomicLong writes = new AtomicLong();
+
+    public CachingRepository(Repository<E, String> repository, int maximumSize) {
+        this.repository = repository;
+        this.cache = new TinyLfuCache<>(maximumSize);
+    }
+
+    @Override
+    public Optional<E> getEntityById(String id) {
+        if (id == null)
+            return repository.getEntityById(null);
+        E cached = cache.getIfPresent(id);
+        if (cached != null)
+            return Optional.of(cached);
+        long writesBeforeLoad = writes.get();
+        Optional<E> loaded = repository.getEntityById(id);
+        loaded.ifPresent(entity -> {
+            cache.put(id, entity);
+            // A save that raced with the load may have been invalidated before the put, drop what was loaded
+            if (writes.get() != writesBeforeLoad)
+                cache.invalidate(id);
+        });
+        return loaded;
+    }
+
+    @Override
+    public Stream<E> all() {
+        return repository.all();
+    }
+
+    @Override
+    public E save(E entity) {
+        E saved = repository.save(entity);
+        writes.incrementAndGet();
+        cache.invalidate(entity.getId());
+        return saved;
+    }
+
+    @Override
+    public void saveAll(Collection<E> entities) {
+        repository.saveAll(entities);
+        writes.incrementAndGet();
+        entities.forEach(entity -> cache.invalidate(entity.getId()));
+    }
+
+    @Override
+    public E delete(E entity) {
+        E deleted = repository.delete(entity);
+        writes.incrementAndGet();
+        cache.invalidate(entity.getId());
+        return deleted;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public Repository<E, String> getRepository() {
+        return repository;
+    }
+
+    public static class UsersCachingRepository extends CachingRepository<User> implements UsersRepository {
+        public UsersCachingRepository(UsersRepository repository, int maximumSize) {
+            super(repository, maximumSize);
+        }
+    }
+
+    public static class AccountsCachingRepository extends CachingRepository<Account> implements AccountsRepository {
+        public AccountsCachingRepository(AccountsRepository repository, int maximumSize) {
+            super(repository, maximumSize);
+        }
+    }
+
+    public static class TransactionsCachingRepository extends CachingRepository<Transaction> implements TransactionsRepository {
+        public TransactionsCachingRepository(TransactionsRepository repository, int maximumSize) {
+            super(repository, maximumSize);
+        }
+    }
+}
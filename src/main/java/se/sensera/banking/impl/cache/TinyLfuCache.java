@@ -0,0 +1,216 @@
+package se.sensera.banking.impl.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size bounded cache using the W-TinyLFU policy. New entries enter a small LRU window, entries falling out of the
+ * window only get into the main segmented LRU if they have been asked for more often than the entry they would
+ * replace, as estimated by a {@link FrequencySketch}.
+ * <p>
+ * Lookups are a plain concurrent map read. Bookkeeping on a hit is skipped when another thread holds the policy lock,
+ * which only costs a little precision in the recency order.
+ */
+public class TinyLfuCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final Queue<K, V>[] queues;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize < 1)
+            throw new IllegalArgumentException("maximumSize must be positive " + maximumSize);
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch(maximumSize);
+        this.queues = new Queue[]{new Queue<>(), new Queue<>(), new Queue<>()};
+    }
+
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            if (policyLock.tryLock()) {
+                try {
+                    sketch.increment(key);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        if (policyLock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                onAccess(node);
+                return;
+            }
+            node = new Node<>(key, value);
+            data.put(key, node);
+            queues[WINDOW].addLast(node, WINDOW);
+            if (queues[WINDOW].size > windowMaximum)
+                admit(queues[WINDOW].first);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null)
+                queues[node.queue].remove(node);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        policyLock.lock();
+        try {
+            data.clear();
+            for (Queue<K, V> queue : queues)
+                queue.clear();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public long size() {
+        return data.size();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.queue < 0)
+            return;
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW -> queues[WINDOW].moveToEnd(node);
+            case PROBATION -> {
+                queues[PROBATION].remove(node);
+                queues[PROTECTED].addLast(node, PROTECTED);
+                if (queues[PROTECTED].size > protectedMaximum) {
+                    Node<K, V> demoted = queues[PROTECTED].first;
+                    queues[PROTECTED].remove(demoted);
+                    queues[PROBATION].addLast(demoted, PROBATION);
+                }
+            }
+            case PROTECTED -> queues[PROTECTED].moveToEnd(node);
+        }
+    }
+
+    // The candidate leaves the window and either takes a place in the main space or is evicted
+    private void admit(Node<K, V> candidate) {
+        queues[WINDOW].remove(candidate);
+        if (data.size() <= maximumSize) {
+            queues[PROBATION].addLast(candidate, PROBATION);
+            return;
+        }
+        Node<K, V> victim = queues[PROBATION].first != null ? queues[PROBATION].first : queues[PROTECTED].first;
+        if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+            evict(candidate);
+        } else {
+            queues[victim.queue].remove(victim);
+            evict(victim);
+            queues[PROBATION].addLast(candidate, PROBATION);
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        node.queue = -1;
+        data.remove(node.key, node);
+        evictions.increment();
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        volatile V value;
+        int queue = -1;
+        Node<K, V> previous;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static class Queue<K, V> {
+        Node<K, V> first;
+        Node<K, V> last;
+        int size;
+
+        void addLast(Node<K, V> node, int queue) {
+            node.queue = queue;
+            node.previous = last;
+            node.next = null;
+            if (last == null)
+                first = node;
+            else
+                last.next = node;
+            last = node;
+            size++;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.previous == null)
+                first = node.next;
+            else
+                node.previous.next = node.next;
+            if (node.next == null)
+                last = node.previous;
+            else
+                node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+            node.queue = -1;
+            size--;
+        }
+
+        void moveToEnd(Node<K, V> node) {
+            if (node != last) {
+                int queue = node.queue;
+                remove(node);
+                addLast(node, queue);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+            size = 0;
+        }
+    }
+}
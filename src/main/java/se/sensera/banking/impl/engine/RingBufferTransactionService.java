@@ -0,0 +1,429 @@
+package se.sensera.banking.impl.engine;
+
+import se.sensera.banking.*;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.EntityResolver;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.io.Closeable;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Transaction service built like an LMAX disruptor. Callers publish requests into a pre-allocated ring, a single
+ * business logic thread decides them against account balances only it keeps, without locks, and two consumers follow
+ * it through the ring in parallel: the journal saves accepted transactions in batches and completes the callers, the
+ * fan-out hands them to the monitors in ring order. A slot is reused once both consumers have passed it.
+ * <p>
+ * Balances are seeded from the transactions repository when the engine starts, from then on the engine has to be the
+ * only writer of transactions. Like {@link TransactionServiceImpl} the funds check counts the transactions created at
+ * or before the created time of the request, so a back-dated withdrawal only sees the funds it had at that time. The
+ * balance also keeps the sums per created time, a request at or after the latest one is checked against the running
+ * balance, an earlier one adds up the sums up to its created time. The account is read from the repository for every
+ * request, so who may use it is always current whether or not the repository hands out the instances it keeps. Users
+ * are only looked up to tell why a request is turned down. Monitors are called on the fan-out thread and may see a
+ * transaction before or after its caller returns, a monitor that throws does not keep the others from seeing it and
+ * the first such failure is kept for {@link #getMonitorFailure()}. {@link #sum} reads the repository like
+ * {@link TransactionServiceImpl} does.
+ * <p>
+ * When the journal fails to save a batch the balances no longer match the repository, the engine stops: the callers
+ * of the batch and of every request after it fail, and new requests are refused. Monitors may already have seen
+ * transactions of the failed batch.
+ * <p>
+ * A caller of {@link #createTransaction} waits for its own transaction to be journaled, {@link #submitTransaction}
+ * lets one caller keep many requests in flight. {@link #close()} finishes what has been published and stops the
+ * threads.
+ */
+public class RingBufferTransactionService implements TransactionService, Closeable {
+    public static final int DEFAULT_RING_SIZE = 1 << 14;
+
+    private static final DateTimeFormatter CREATED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final long CLOSED = 1L << 62;
+    private static final int SPINS_BEFORE_PARKING = 100;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final UsersRepository usersRepository;
+    private final AccountsRepository accountsRepository;
+    private final TransactionsRepository transactionsRepository;
+    private final EntityResolver entityResolver;
+    private final TransactionServiceImpl reads;
+    private final List<Consumer<Transaction>> monitors = new CopyOnWriteArrayList<>();
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLongArray published;
+    // Number of sequences claimed by callers, with the CLOSED bit set once the engine stops taking requests
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong decided = new AtomicLong(-1);
+    private final AtomicLong journaled = new AtomicLong(-1);
+    private final AtomicLong delivered = new AtomicLong(-1);
+    private final Worker businessLogic;
+    private final Worker journal;
+    private final Worker fanOut;
+    // Set by the journal when a save fails, the engine decides and saves nothing after it
+    private volatile RuntimeException stopped;
+    private final AtomicReference<RuntimeException> monitorFailure = new AtomicReference<>();
+
+    // Only touched by the business logic thread
+    private final Map<String, Balance> balances = new HashMap<>();
+    private final SplittableRandom random = new SplittableRandom(new SecureRandom().nextLong());
+    private String lastCreated;
+    private Date lastDate;
+
+    public RingBufferTransactionService(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                        TransactionsRepository transactionsRepository) {
+        this(usersRepository, accountsRepository, transactionsRepository, DEFAULT_RING_SIZE);
+    }
+
+    public RingBufferTransactionService(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                        TransactionsRepository transactionsRepository, int ringSize) {
+        if (ringSize < 1 || Integer.bitCount(ringSize) != 1)
+            throw new IllegalArgumentException("ringSize must be a power of two " + ringSize);
+        this.usersRepository = usersRepository;
+        this.accountsRepository = accountsRepository;
+        this.transactionsRepository = transactionsRepository;
+        this.entityResolver = new EntityResolver(usersRepository, accountsRepository);
+        this.reads = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository, entityResolver);
+        this.slots = new Slot[ringSize];
+        this.mask = ringSize - 1;
+        this.published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+        transactionsRepository.all().forEach(transaction ->
+                balances.computeIfAbsent(TransactionImpl.accountIdOf(transaction), id -> new Balance())
+                        .add(transaction.getCreated().getTime(), transaction.getAmount()));
+
+        businessLogic = new Worker("transaction-engine-decide", this::decideLoop);
+        journal = new Worker("transaction-engine-journal", this::journalLoop);
+        fanOut = new Worker("transaction-engine-fan-out", this::fanOutLoop);
+        businessLogic.start();
+        journal.start();
+        fanOut.start();
+    }
+
+    @Override
+    public Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException {
+        return tryCreateTransaction(created, userId, accountId, amount).orElseThrow();
+    }
+
+    @Override
+    public TransactionResult tryCreateTransaction(String created, String userId, String accountId, double amount) {
+        try {
+            return submitTransaction(created, userId, accountId, amount).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes the request and returns at once. The result completes after the transaction is journaled, or with the
+     * rejection, in the order the requests were published.
+     */
+    public CompletableFuture<TransactionResult> submitTransaction(String created, String userId, String accountId, double amount) {
+        CompletableFuture<TransactionResult> result = new CompletableFuture<>();
+        long sequence = claim();
+        Slot slot = slots[index(sequence)];
+        slot.created = created;
+        slot.userId = userId;
+        slot.accountId = accountId;
+        slot.amount = amount;
+        slot.result = result;
+        published.set(index(sequence), sequence);
+        businessLogic.wake();
+        return result;
+    }
+
+    @Override
+    public double sum(String created, String userId, String accountId) throws UseException {
+        return reads.sum(created, userId, accountId);
+    }
+
+    @Override
+    public void addMonitor(Consumer<Transaction> monitor) {
+        monitors.add(monitor);
+    }
+
+    public int getRingSize() {
+        return slots.length;
+    }
+
+    /**
+     * The first exception thrown by a monitor, empty while every monitor has returned normally.
+     */
+    public Optional<RuntimeException> getMonitorFailure() {
+        return Optional.ofNullable(monitorFailure.get());
+    }
+
+    @Override
+    public void close() {
+        claimed.getAndUpdate(count -> count | CLOSED);
+        businessLogic.wake();
+        journal.wake();
+        fanOut.wake();
+        try {
+            businessLogic.join();
+            journal.join();
+            fanOut.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long claim() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (stopped != null)
+                throw new IllegalStateException("Transaction engine stopped after a failed save", stopped);
+            if ((sequence & CLOSED) != 0)
+                throw new IllegalStateException("Transaction engine is closed");
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        long wrapPoint = sequence - slots.length;
+        while (wrapPoint > Math.min(journaled.get(), delivered.get()))
+            LockSupport.parkNanos(1_000);
+        return sequence;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    // All claimed sequences have passed the given one and no more can be claimed
+    private boolean isDrained(long sequence) {
+        long count = claimed.get();
+        return (count & CLOSED) != 0 && sequence == (count & ~CLOSED) - 1;
+    }
+
+    private void decideLoop() {
+        BooleanSupplier hasWork = () -> published.get(index(decided.get() + 1)) == decided.get() + 1 || isDrained(decided.get());
+        while (true) {
+            long next = decided.get() + 1;
+            long last = next - 1;
+            while (published.get(index(last + 1)) == last + 1)
+                last++;
+            if (last < next) {
+                if (isDrained(last))
+                    return;
+                businessLogic.idle(hasWork);
+                continue;
+            }
+            for (long sequence = next; sequence <= last; sequence++)
+                decide(slots[index(sequence)]);
+            decided.set(last);
+            journal.wake();
+            fanOut.wake();
+        }
+    }
+
+    private void decide(Slot slot) {
+        if (stopped != null) {
+            slot.decision = null;
+            slot.error = stopped;
+            return;
+        }
+        try {
+            slot.decision = decide(slot.created, slot.userId, slot.accountId, slot.amount);
+            slot.error = null;
+        } catch (RuntimeException e) {
+            slot.decision = null;
+            slot.error = e;
+        }
+    }
+
+    private TransactionResult decide(String created, String userId, String accountId, double amount) {
+        Account account = accountsRepository.getEntityById(accountId).orElse(null);
+        if (account == null)
+            return rejected(userId, UseExceptionType.ACCOUNT_NOT_FOUND);
+        Date date = formatStringToDate(created);
+        // The owner and the users of the account exist, anyone else is looked up to tell why it is turned down
+        if (!account.getOwner().getId().equals(userId) && !AccountImpl.hasUser(account, userId))
+            return rejected(userId, UseExceptionType.NOT_ALLOWED);
+        Balance balance = balances.computeIfAbsent(accountId, id -> new Balance());
+        if (balance.fundsAt(date.getTime()) + amount < 0)
+            return TransactionResult.rejected(UseExceptionType.NOT_FUNDED);
+        balance.add(date.getTime(), amount);
+        return TransactionResult.success(new TransactionImpl(nextId(), date, userId, accountId, amount, entityResolver));
+    }
+
+    private TransactionResult rejected(String userId, UseExceptionType useExceptionType) {
+        if (usersRepository.getEntityById(userId).isEmpty())
+            return TransactionResult.rejected(UseExceptionType.USER_NOT_FOUND);
+        return TransactionResult.rejected(useExceptionType);
+    }
+
+    // Requests mostly arrive with the same created time, parse it once
+    private Date formatStringToDate(String created) {
+        if (!created.equals(lastCreated)) {
+            LocalDateTime localDateTime = LocalDateTime.parse(created, CREATED_FORMAT);
+            lastDate = Date.from(localDateTime.atZone(ZoneId.systemDefault()).toInstant());
+            lastCreated = created;
+        }
+        return new Date(lastDate.getTime());
+    }
+
+    private String nextId() {
+        long mostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long leastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    private void journalLoop() {
+        List<Transaction> batch = new ArrayList<>();
+        BooleanSupplier hasWork = () -> decided.get() > journaled.get() || isDrained(journaled.get());
+        while (true) {
+            long next = journaled.get() + 1;
+            long last = decided.get();
+            if (last < next) {
+                if (isDrained(last))
+                    return;
+                journal.idle(hasWork);
+                continue;
+            }
+            batch.clear();
+            for (long sequence = next; sequence <= last; sequence++) {
+                TransactionResult decision = slots[index(sequence)].decision;
+                if (decision != null && decision.isSuccess())
+                    batch.add(decision.getTransaction());
+            }
+            RuntimeException failure = stopped;
+            try {
+                if (failure == null && !batch.isEmpty())
+                    transactionsRepository.saveAll(batch);
+            } catch (RuntimeException e) {
+                // The balances already count the batch and later decisions may rely on it, stop instead of going on
+                failure = e;
+                stopped = e;
+                claimed.getAndUpdate(count -> count | CLOSED);
+                businessLogic.wake();
+                fanOut.wake();
+            }
+            for (long sequence = next; sequence <= last; sequence++)
+                complete(slots[index(sequence)], failure);
+            journaled.set(last);
+        }
+    }
+
+    private static void complete(Slot slot, RuntimeException failure) {
+        if (slot.error != null)
+            slot.result.completeExceptionally(slot.error);
+        else if (failure != null && slot.decision.isSuccess())
+            slot.result.completeExceptionally(failure);
+        else
+            slot.result.complete(slot.decision);
+    }
+
+    private void fanOutLoop() {
+        BooleanSupplier hasWork = () -> decided.get() > delivered.get() || isDrained(delivered.get());
+        while (true) {
+            long next = delivered.get() + 1;
+            long last = decided.get();
+            if (last < next) {
+                if (isDrained(last))
+                    return;
+                fanOut.idle(hasWork);
+                continue;
+            }
+            for (long sequence = next; sequence <= last; sequence++) {
+                TransactionResult decision = slots[index(sequence)].decision;
+                if (decision != null && decision.isSuccess())
+                    deliver(decision.getTransaction());
+            }
+            delivered.set(last);
+        }
+    }
+
+    private void deliver(Transaction transaction) {
+        for (Consumer<Transaction> monitor : monitors) {
+            try {
+                monitor.accept(transaction);
+            } catch (RuntimeException e) {
+                monitorFailure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    private static class Slot {
+        String created;
+        String userId;
+        String accountId;
+        double amount;
+        CompletableFuture<TransactionResult> result;
+        TransactionResult decision;
+        RuntimeException error;
+    }
+
+    private static class Balance {
+        double amount;
+        long latest = Long.MIN_VALUE;
+        // Sum of the amounts per created time, only read for requests created before the latest transaction
+        final NavigableMap<Long, Double> byCreated = new TreeMap<>();
+
+        double fundsAt(long created) {
+            if (created >= latest)
+                return amount;
+            return byCreated.headMap(created, true).values().stream().mapToDouble(Double::doubleValue).sum();
+        }
+
+        void add(long created, double amount) {
+            this.amount += amount;
+            latest = Math.max(latest, created);
+            byCreated.merge(created, amount, Double::sum);
+        }
+    }
+
+    // Spins a little before parking so a busy ring is never parked, an idle one costs no CPU
+    private static class Worker {
+        private final Thread thread;
+        private volatile boolean parked;
+
+        Worker(String name, Runnable loop) {
+            thread = new Thread(loop, name);
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void idle(BooleanSupplier hasWork) {
+            for (int i = 0; i < SPINS_BEFORE_PARKING; i++) {
+                if (hasWork.getAsBoolean())
+                    return;
+                Thread.yield();
+            }
+            parked = true;
+            if (!hasWork.getAsBoolean())
+                LockSupport.parkNanos(this, PARK_NANOS);
+            parked = false;
+        }
+
+        void wake() {
+            if (parked)
+                LockSupport.unpark(thread);
+        }
+
+        void join() throws InterruptedException {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package se.sensera.banking.impl.engine;
+
+import se.sensera.banking.*;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.io.Closeable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Transaction service that partitions accounts over a number of shards by the hash of the account id. Every shard
+ * owns the transactions of its accounts in a repository of its own and runs all calls for them on one thread, so
+ * shards never contend with each other and calls for one account are executed one at a time.
+ * <p>
+ * Calls for one account are routed to its shard, {@link #sumForUser} needs every shard and fans out to all of them
+ * before merging the partial sums. Monitors are called on the thread of the shard the transaction belongs to.
+ */
+public class ShardedTransactionService implements TransactionService, Closeable {
+    private static final DateTimeFormatter CREATED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final UsersRepository usersRepository;
+    private final AccountsRepository accountsRepository;
+    private final List<Shard> shards;
+
+    public ShardedTransactionService(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                     List<? extends TransactionsRepository> shardRepositories) {
+        if (shardRepositories.isEmpty())
+            throw new IllegalArgumentException("at least one shard is needed");
+        this.usersRepository = usersRepository;
+        this.accountsRepository = accountsRepository;
+        this.shards = IntStream.range(0, shardRepositories.size())
+                .mapToObj(n -> new Shard(n, shardRepositories.get(n)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Shards kept in {@link IndexedRepository indexed repositories}, seeded with the transactions already in
+     * {@code history}. Every transaction a shard saves is written to {@code history} first, the shards only serve the
+     * reads, so {@code history} stays as durable as it is on its own. The shards write to {@code history} one at a time
+     * under a shared lock, so it need not be thread-safe.
+     */
+    public ShardedTransactionService(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                     TransactionsRepository history, int shardCount) {
+        this(usersRepository, accountsRepository, seededShards(history, shardCount));
+    }
+
+    private static List<TransactionsRepository> seededShards(TransactionsRepository history, int shardCount) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("shardCount must be positive " + shardCount);
+        List<List<Transaction>> partitions = new ArrayList<>();
+        for (int n = 0; n < shardCount; n++)
+            partitions.add(new ArrayList<>());
+        history.all().forEach(transaction -> partitions.get(shardIndex(TransactionImpl.accountIdOf(transaction), shardCount)).add(transaction));
+        List<TransactionsRepository> shardRepositories = new ArrayList<>();
+        Object historyLock = new Object();
+        for (List<Transaction> partition : partitions) {
+            TransactionsRepository shardRepository = new IndexedRepository.TransactionsIndexedRepository();
+            if (!partition.isEmpty())
+                shardRepository.saveAll(partition);
+            shardRepositories.add(new WriteThroughRepository(shardRepository, history, historyLock));
+        }
+        return shardRepositories;
+    }
+
+    @Override
+    public Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException {
+        return tryCreateTransaction(created, userId, accountId, amount).orElseThrow();
+    }
+
+    @Override
+    public TransactionResult tryCreateTransaction(String created, String userId, String accountId, double amount) {
+        Shard shard = shardOf(accountId);
+        return awaitUnchecked(shard.executor.submit(() -> shard.transactionService.tryCreateTransaction(created, userId, accountId, amount)));
+    }
+
+    @Override
+    public double sum(String created, String userId, String accountId) throws UseException {
+        Shard shard = shardOf(accountId);
+        return await(shard.executor.submit(() -> shard.transactionService.sum(created, userId, accountId)));
+    }
+
+    /**
+     * Sum up to {@code created} over every account the user owns or has been added to, the partial sums of all
+     * shards are computed in parallel.
+     */
+    public double sumForUser(String created, String userId) throws UseException {
+        User user = usersRepository.getEntityById(userId)
+                .orElseThrow(() -> UseException.withoutStackTrace(Activity.SUM_TRANSACTION, UseExceptionType.USER_NOT_FOUND));
+        Set<String> accountIds = accountsRepository.all()
+                .filter(account -> account.getOwner().equals(user) || AccountImpl.hasUser(account, userId))
+                .map(Account::getId)
+                .collect(Collectors.toSet());
+        Date date = formatStringToDate(created);
+        List<Future<Double>> partialSums = new ArrayList<>();
+        for (Shard shard : shards)
+            partialSums.add(shard.executor.submit(() -> shard.sum(date, accountIds)));
+        double sum = 0;
+        for (Future<Double> partialSum : partialSums)
+            sum += awaitUnchecked(partialSum);
+        return sum;
+    }
+
+    @Override
+    public void addMonitor(Consumer<Transaction> monitor) {
+        shards.forEach(shard -> shard.transactionService.addMonitor(monitor));
+    }
+
+    /**
+     * The transactions of all shards, shard by shard.
+     */
+    public Stream<Transaction> allTransactions() {
+        return shards.stream().flatMap(shard -> shard.transactionsRepository.all());
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public int shardIndex(String accountId) {
+        return shardIndex(accountId, shards.size());
+    }
+
+    private static int shardIndex(String accountId, int shardCount) {
+        return Math.floorMod(accountId.hashCode(), shardCount);
+    }
+
+    private Shard shardOf(String accountId) {
+        return shards.get(shardIndex(accountId));
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(shard -> shard.executor.shutdown());
+        try {
+            for (Shard shard : shards)
+                shard.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <R> R await(Future<R> future) throws UseException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UseException)
+                throw (UseException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // For calls that report rejections in their result instead of throwing
+    private static <R> R awaitUnchecked(Future<R> future) {
+        try {
+            return await(future);
+        } catch (UseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Date formatStringToDate(String created) {
+        LocalDateTime localDateTime = LocalDateTime.parse(created, CREATED_FORMAT);
+        return Date.from(localDateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Reads from the shard's own repository, saves and deletes go to the history first and only reach the shard
+     * once the history has taken them. All shards of one history hold the same lock while they write to it.
+     */
+    private static class WriteThroughRepository implements TransactionsRepository {
+        private final TransactionsRepository shard;
+        private final TransactionsRepository history;
+        private final Object historyLock;
+
+        WriteThroughRepository(TransactionsRepository shard, TransactionsRepository history, Object historyLock) {
+            this.shard = shard;
+            this.history = history;
+            this.historyLock = historyLock;
+        }
+
+        @Override
+        public Optional<Transaction> getEntityById(String id) {
+            return shard.getEntityById(id);
+        }
+
+        @Override
+        public Stream<Transaction> all() {
+            return shard.all();
+        }
+
+        @Override
+        public Transaction save(Transaction transaction) {
+            synchronized (historyLock) {
+                history.save(transaction);
+            }
+            return shard.save(transaction);
+        }
+
+        @Override
+        public void saveAll(Collection<Transaction> transactions) {
+            synchronized (historyLock) {
+                history.saveAll(transactions);
+            }
+            shard.saveAll(transactions);
+        }
+
+        @Override
+        public Transaction delete(Transaction transaction) {
+            synchronized (historyLock) {
+                history.delete(transaction);
+            }
+            return shard.delete(transaction);
+        }
+    }
+
+    private class Shard {
+        final TransactionsRepository transactionsRepository;
+        final TransactionServiceImpl transactionService;
+        final ExecutorService executor;
+
+        Shard(int index, TransactionsRepository transactionsRepository) {
+            this.transactionsRepository = transactionsRepository;
+            this.transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "transaction-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        double sum(Date date, Set<String> accountIds) {
+            return transactionsRepository.all()
+                    .filter(transaction -> accountIds.contains(TransactionImpl.accountIdOf(transaction)) && !transaction.getCreated().after(date))
+                    .mapToDouble(Transaction::getAmount).sum();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package se.sensera.banking.impl.engine;
+
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.TransactionService;
+import se.sensera.banking.TransactionsRepository;
+import se.sensera.banking.UsersRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+
+import java.util.Arrays;
+
+/**
+ * How transactions are executed. {@link #DIRECT} runs every call on the calling thread against the repositories,
+ * {@link #RING_BUFFER} hands it to a {@link RingBufferTransactionService} and {@link #SHARDED} to a
+ * {@link ShardedTransactionService} with one shard per available processor that writes through to the transactions
+ * repository. Both have to be closed when done.
+ */
+public enum TransactionEngine {
+    DIRECT("direct") {
+        @Override
+        public TransactionService create(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                         TransactionsRepository transactionsRepository) {
+            return new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        }
+    },
+    RING_BUFFER("ring-buffer") {
+        @Override
+        public TransactionService create(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                         TransactionsRepository transactionsRepository) {
+            return new RingBufferTransactionService(usersRepository, accountsRepository, transactionsRepository);
+        }
+    },
+    SHARDED("sharded") {
+        @Override
+        public TransactionService create(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                         TransactionsRepository transactionsRepository) {
+            return new ShardedTransactionService(usersRepository, accountsRepository, transactionsRepository,
+                    Runtime.getRuntime().availableProcessors());
+        }
+    },
+    ;
+
+    private final String name;
+
+    TransactionEngine(String name) {
+        this.name = name;
+    }
+
+    public abstract TransactionService create(UsersRepository usersRepository, AccountsRepository accountsRepository,
+                                              TransactionsRepository transactionsRepository);
+
+    public String getName() {
+        return name;
+    }
+
+    public static TransactionEngine parse(String name) {
+        return Arrays.stream(values())
+                .filter(engine -> engine.name.equalsIgnoreCase(name) || engine.name().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("doesn't exist " + name));
+    }
+}
@@ -0,0 +1,54 @@
+package se.sensera.banking.impl.index;
+
+import se.sensera.banking.Account;
+
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Accounts kept sorted by name in a skip list. Account names are unique so the name alone is the key.
+ * <p>
+ * Reading from the start or from just after a given name is O(log n) plus the number of accounts read.
+ */
+public class AccountNameIndex extends SeededIndex<Account> {
+    private final ConcurrentSkipListMap<String, Account> accounts = new ConcurrentSkipListMap<>();
+
+    public AccountNameIndex(Supplier<Stream<Account>> seed) {
+        super(seed);
+    }
+
+    public Stream<Account> sorted() {
+        ensureSeeded();
+        return accounts.values().stream();
+    }
+
+    /**
+     * Accounts with a name sorting after {@code afterName}, all accounts when it is null.
+     */
+    public Stream<Account> after(String afterName) {
+        ensureSeeded();
+        NavigableMap<String, Account> tail = afterName == null ? accounts : accounts.tailMap(afterName, false);
+        return tail.values().stream();
+    }
+
+    public void add(Account account) {
+        if (isSeeded())
+            load(account);
+    }
+
+    public void rename(String oldName, Account account) {
+        if (isSeeded()) {
+            if (oldName != null)
+                accounts.remove(oldName, account);
+            load(account);
+        }
+    }
+
+    @Override
+    protected void load(Account account) {
+        if (account.getName() != null)
+            accounts.put(account.getName(), account);
+    }
+}
@@ -0,0 +1,57 @@
+package se.sensera.banking.impl.index;
+
+import se.sensera.banking.Account;
+import se.sensera.banking.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Accounts per user, both the accounts the user owns and the ones the user has been added to.
+ */
+public class AccountsByUserIndex extends SeededIndex<Account> {
+    private final Map<String, Map<Account, Account>> accountsByUser = new ConcurrentHashMap<>();
+
+    public AccountsByUserIndex(Supplier<Stream<Account>> seed) {
+        super(seed);
+    }
+
+    public Stream<Account> accountsOf(String userId) {
+        ensureSeeded();
+        Map<Account, Account> accounts = accountsByUser.get(userId);
+        return accounts == null ? Stream.empty() : accounts.values().stream();
+    }
+
+    public void add(String userId, Account account) {
+        if (isSeeded())
+            put(userId, account);
+    }
+
+    public void remove(String userId, Account account) {
+        if (isSeeded())
+            accountsByUser.computeIfPresent(userId, (id, accounts) -> {
+                accounts.remove(account);
+                return accounts.isEmpty() ? null : accounts;
+            });
+    }
+
+    /**
+     * Replaces the stored copy of the account for its owner and users, used after an account has been changed.
+     */
+    public void refresh(Account account) {
+        if (isSeeded())
+            load(account);
+    }
+
+    @Override
+    protected void load(Account account) {
+        put(account.getOwner().getId(), account);
+        account.getUsers().map(User::getId).forEach(userId -> put(userId, account));
+    }
+
+    private void put(String userId, Account account) {
+        accountsByUser.computeIfAbsent(userId, id -> new ConcurrentHashMap<>()).put(account, account);
+    }
+}
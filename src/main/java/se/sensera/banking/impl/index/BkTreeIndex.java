@@ -0,0 +1,150 @@
+package se.sensera.banking.impl.index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * BK-tree over the lower cased names of entities and the single words in them, for finding names within a given
+ * edit distance. Every child of a node sits at a known distance from it, so by the triangle inequality only children
+ * within the search distance of that need to be visited and most of the tree is never looked at.
+ * <p>
+ * Terms are never removed from the tree, an entity that is renamed or removed is only taken off the old terms.
+ */
+public class BkTreeIndex<E> extends SeededIndex<E> {
+    private final Function<E, String> name;
+    private final Map<E, Set<String>> termsByEntity = new ConcurrentHashMap<>();
+    private volatile Node<E> root;
+
+    public BkTreeIndex(Supplier<Stream<E>> seed, Function<E, String> name) {
+        super(seed);
+        this.name = name;
+    }
+
+    /**
+     * Entities with a name, or a word in it, within {@code maxDistance} edits of the search string. The closest
+     * matches come first.
+     */
+    public Stream<E> search(String searchString, int maxDistance) {
+        ensureSeeded();
+        Node<E> start = root;
+        if (start == null)
+            return Stream.empty();
+        String query = TrigramIndex.fold(searchString.strip());
+        Map<E, Integer> best = new HashMap<>();
+        Deque<Node<E>> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            Node<E> node = pending.pop();
+            int distance = distance(query, node.term);
+            if (distance <= maxDistance)
+                node.entities.values().forEach(entity -> best.merge(entity, distance, Math::min));
+            for (int d = Math.max(1, distance - maxDistance); d <= distance + maxDistance; d++) {
+                Node<E> child = node.children.get(d);
+                if (child != null)
+                    pending.push(child);
+            }
+        }
+        return best.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey);
+    }
+
+    public void update(E entity) {
+        if (isSeeded())
+            load(entity);
+    }
+
+    public synchronized void remove(E entity) {
+        if (!isSeeded())
+            return;
+        Set<String> terms = termsByEntity.remove(entity);
+        if (terms != null)
+            terms.forEach(term -> find(term).ifPresent(node -> node.entities.remove(entity)));
+    }
+
+    @Override
+    protected synchronized void load(E entity) {
+        String entityName = name.apply(entity);
+        if (entityName == null)
+            return;
+        Set<String> terms = terms(entityName);
+        Set<String> old = termsByEntity.put(entity, terms);
+        if (old != null)
+            old.stream()
+                    .filter(term -> !terms.contains(term))
+                    .forEach(term -> find(term).ifPresent(node -> node.entities.remove(entity)));
+        terms.forEach(term -> insert(term).entities.put(entity, entity));
+    }
+
+    private Node<E> insert(String term) {
+        if (root == null) {
+            root = new Node<>(term);
+            return root;
+        }
+        Node<E> node = root;
+        while (true) {
+            int distance = distance(term, node.term);
+            if (distance == 0)
+                return node;
+            Node<E> child = node.children.get(distance);
+            if (child == null) {
+                child = new Node<>(term);
+                node.children.put(distance, child);
+                return child;
+            }
+            node = child;
+        }
+    }
+
+    private Optional<Node<E>> find(String term) {
+        Node<E> node = root;
+        while (node != null) {
+            int distance = distance(term, node.term);
+            if (distance == 0)
+                return Optional.of(node);
+            node = node.children.get(distance);
+        }
+        return Optional.empty();
+    }
+
+    private static Set<String> terms(String name) {
+        String folded = TrigramIndex.fold(name.strip());
+        Set<String> terms = new HashSet<>();
+        terms.add(folded);
+        for (String word : folded.split("\\s+"))
+            if (!word.isEmpty())
+                terms.add(word);
+        return terms;
+    }
+
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j] + 1, current[j - 1] + 1));
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private static class Node<E> {
+        final String term;
+        final Map<Integer, Node<E>> children = new ConcurrentHashMap<>();
+        final Map<E, E> entities = new ConcurrentHashMap<>();
+
+        Node(String term) {
+            this.term = term;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package se.sensera.banking.impl.index;
+
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Base for indexes that fill themselves from a repository the first time they are needed, so services that never
+ * use an index never pay for scanning the repository.
+ * <p>
+ * Changes reported before the index is seeded are ignored since the seed already contains them, changes racing with
+ * the seeding wait for it to finish.
+ */
+public abstract class SeededIndex<T> {
+    private final Supplier<Stream<T>> seed;
+    private volatile boolean seeded;
+
+    protected SeededIndex(Supplier<Stream<T>> seed) {
+        this.seed = seed;
+    }
+
+    protected abstract void load(T entity);
+
+    protected void ensureSeeded() {
+        if (seeded)
+            return;
+        synchronized (this) {
+            if (!seeded) {
+                Stream<T> entities = seed.get();
+                if (entities != null)
+                    entities.forEach(this::load);
+                seeded = true;
+            }
+        }
+    }
+
+    protected boolean isSeeded() {
+        if (seeded)
+            return true;
+        synchronized (this) {
+            return seeded;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package se.sensera.banking.impl.index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Inverted index from the three letter substrings of lower cased names to the entities having them. A substring
+ * search only looks at the entities sharing the rarest trigram of the search string and checks those, instead of
+ * lower casing and scanning every name.
+ * <p>
+ * Search strings shorter than three letters have no trigram to look up and are checked against every indexed name.
+ */
+public class TrigramIndex<E> extends SeededIndex<E> {
+    private static final int GRAM = 3;
+
+    private final Function<E, String> name;
+    private final Map<E, Entry<E>> entries = new ConcurrentHashMap<>();
+    private final Map<String, Set<E>> postings = new ConcurrentHashMap<>();
+
+    public TrigramIndex(Supplier<Stream<E>> seed, Function<E, String> name) {
+        super(seed);
+        this.name = name;
+    }
+
+    public static String fold(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    public Stream<E> search(String searchString) {
+        ensureSeeded();
+        String folded = fold(searchString);
+        if (folded.length() < GRAM)
+            return entries.values().stream()
+                    .filter(entry -> entry.folded.contains(folded))
+                    .map(entry -> entry.entity);
+        Set<E> rarest = null;
+        for (String gram : trigrams(folded)) {
+            Set<E> posting = postings.get(gram);
+            if (posting == null)
+                return Stream.empty();
+            if (rarest == null || posting.size() < rarest.size())
+                rarest = posting;
+        }
+        return rarest.stream()
+                .map(entries::get)
+                .filter(entry -> entry != null && entry.folded.contains(folded))
+                .map(entry -> entry.entity);
+    }
+
+    public void update(E entity) {
+        if (isSeeded())
+            load(entity);
+    }
+
+    public synchronized void remove(E entity) {
+        if (!isSeeded())
+            return;
+        Entry<E> old = entries.remove(entity);
+        if (old != null)
+            trigrams(old.folded).forEach(gram -> removePosting(gram, entity));
+    }
+
+    @Override
+    protected synchronized void load(E entity) {
+        String entityName = name.apply(entity);
+        if (entityName == null)
+            return;
+        Entry<E> entry = new Entry<>(entity, fold(entityName));
+        Entry<E> old = entries.put(entity, entry);
+        Set<String> grams = trigrams(entry.folded);
+        if (old != null)
+            trigrams(old.folded).stream()
+                    .filter(gram -> !grams.contains(gram))
+                    .forEach(gram -> removePosting(gram, entity));
+        grams.forEach(gram -> postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(entity));
+    }
+
+    private void removePosting(String gram, E entity) {
+        postings.computeIfPresent(gram, (key, posting) -> {
+            posting.remove(entity);
+            return posting.isEmpty() ? null : posting;
+        });
+    }
+
+    private static Set<String> trigrams(String folded) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= folded.length(); i++)
+            grams.add(folded.substring(i, i + GRAM));
+        return grams;
+    }
+
+    private static class Entry<E> {
+        final E entity;
+        final String folded;
+
+        Entry(E entity, String folded) {
+            this.entity = entity;
+            this.folded = folded;
+        }
+    }
+}
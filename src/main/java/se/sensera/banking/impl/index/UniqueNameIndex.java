@@ -0,0 +1,72 @@
+package se.sensera.banking.impl.index;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Set of taken names used to keep names unique. By default names are compared after trimming and lower casing, so
+ * "Savings" and " savings" count as the same name. Reserving is atomic, of two threads reserving the same name only
+ * one succeeds.
+ */
+public class UniqueNameIndex extends SeededIndex<String> {
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final UnaryOperator<String> normalizer;
+
+    public UniqueNameIndex(Supplier<Stream<String>> seed) {
+        this(seed, UniqueNameIndex::normalize);
+    }
+
+    public UniqueNameIndex(Supplier<Stream<String>> seed, UnaryOperator<String> normalizer) {
+        super(seed);
+        this.normalizer = normalizer;
+    }
+
+    public static String normalize(String name) {
+        return name.strip().toLowerCase(Locale.ROOT);
+    }
+
+    public boolean reserve(String name) {
+        ensureSeeded();
+        return names.add(normalizer.apply(name));
+    }
+
+    public void release(String name) {
+        ensureSeeded();
+        names.remove(normalizer.apply(name));
+    }
+
+    /**
+     * Takes the new name and gives up the old one. Fails without releasing anything if the new name is taken.
+     */
+    public boolean rename(String oldName, String newName) {
+        ensureSeeded();
+        String oldKey = oldName == null ? null : normalizer.apply(oldName);
+        String newKey = normalizer.apply(newName);
+        if (newKey.equals(oldKey))
+            return true;
+        if (!names.add(newKey))
+            return false;
+        if (oldKey != null)
+            names.remove(oldKey);
+        return true;
+    }
+
+    public boolean isSameName(String name, String otherName) {
+        return normalizer.apply(name).equals(normalizer.apply(otherName));
+    }
+
+    public boolean contains(String name) {
+        ensureSeeded();
+        return names.contains(normalizer.apply(name));
+    }
+
+    @Override
+    protected void load(String name) {
+        if (name != null)
+            names.add(normalizer.apply(name));
+    }
+}
@@ -0,0 +1,108 @@
+package se.sensera.banking.impl.jfr;
+
+import jdk.jfr.*;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import java.util.stream.Stream;
+
+/**
+ * Flight recorder event for one service call. Disabled by default, turn it on in the recording settings with
+ * {@code se.sensera.banking.ServiceOperation#enabled=true}. While disabled an operation costs one event allocation,
+ * which the JIT normally removes, and the enabled check.
+ * <p>
+ * The outcome is {@link #SUCCEEDED}, the {@link se.sensera.banking.exceptions.UseExceptionType} of a rejection or the
+ * class of an unexpected exception. Scanned counts the repository entries visited by operations that scan the
+ * repository instead of using an index.
+ */
+@Name("se.sensera.banking.ServiceOperation")
+@Label("Service Operation")
+@Category({"Banking", "Services"})
+@Description("A call to the transaction, account or user service")
+@Enabled(false)
+@StackTrace(false)
+public class ServiceOperationEvent extends Event {
+    public static final String SUCCEEDED = "SUCCEEDED";
+
+    /**
+     * Event for work done outside any traced operation, it is never committed and counts nothing.
+     */
+    public static final ServiceOperationEvent UNTRACED = new ServiceOperationEvent();
+
+    @Label("Activity")
+    String activity;
+
+    @Label("Account Id")
+    String accountId;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Scanned Entries")
+    long scanned;
+
+    transient UseExceptionType rejection;
+
+    public static <R> R traced(Activity activity, String accountId, Operation<R> operation) throws UseException {
+        ServiceOperationEvent event = new ServiceOperationEvent();
+        event.begin();
+        try {
+            R result = operation.run(event);
+            event.complete(activity, accountId, SUCCEEDED);
+            return result;
+        } catch (UseException e) {
+            event.complete(activity, accountId, e.getUserExceptionType().name());
+            throw e;
+        } catch (RuntimeException | Error e) {
+            event.complete(activity, accountId, e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    public static <R> R tracedUnchecked(Activity activity, String accountId, UncheckedOperation<R> operation) {
+        ServiceOperationEvent event = new ServiceOperationEvent();
+        event.begin();
+        try {
+            R result = operation.run(event);
+            event.complete(activity, accountId, event.rejection != null ? event.rejection.name() : SUCCEEDED);
+            return result;
+        } catch (RuntimeException | Error e) {
+            event.complete(activity, accountId, e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    /**
+     * Marks an operation that reports its rejection as a result instead of throwing as rejected.
+     */
+    public void rejected(UseExceptionType useExceptionType) {
+        rejection = useExceptionType;
+    }
+
+    /**
+     * Counts the entries passing through a sequential stream, the stream is returned untouched when the event is
+     * disabled.
+     */
+    public <T> Stream<T> countScanned(Stream<T> entries) {
+        return this != UNTRACED && isEnabled() ? entries.peek(entry -> scanned++) : entries;
+    }
+
+    private void complete(Activity activity, String accountId, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.activity = activity.name();
+            this.accountId = accountId;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+
+    public interface Operation<R> {
+        R run(ServiceOperationEvent event) throws UseException;
+    }
+
+    public interface UncheckedOperation<R> {
+        R run(ServiceOperationEvent event);
+    }
+}
@@ -0,0 +1,119 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and outcome of every call made for one {@link Activity}. A call either succeeds, is rejected with a
+ * {@link UseExceptionType} or fails with an unexpected exception.
+ */
+public class ActivityMetrics implements ActivityMetricsMXBean {
+    private final Activity activity;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder[] rejections = new LongAdder[UseExceptionType.values().length];
+    private final LongAdder failures = new LongAdder();
+
+    public ActivityMetrics(Activity activity) {
+        this.activity = activity;
+        for (int i = 0; i < rejections.length; i++)
+            rejections[i] = new LongAdder();
+    }
+
+    public void succeeded(long nanos) {
+        latencies.record(nanos);
+    }
+
+    public void rejected(long nanos, UseExceptionType useExceptionType) {
+        rejections[useExceptionType.ordinal()].increment();
+        latencies.record(nanos);
+    }
+
+    public void failed(long nanos) {
+        failures.increment();
+        latencies.record(nanos);
+    }
+
+    public long rejections(UseExceptionType useExceptionType) {
+        return rejections[useExceptionType.ordinal()].sum();
+    }
+
+    public LatencyHistogram latencies() {
+        return latencies;
+    }
+
+    @Override
+    public String getActivity() {
+        return activity.name();
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.count();
+    }
+
+    @Override
+    public long getSucceeded() {
+        return Math.max(0, getCalls() - getRejected() - getFailed());
+    }
+
+    @Override
+    public long getRejected() {
+        long rejected = 0;
+        for (LongAdder rejection : rejections)
+            rejected += rejection.sum();
+        return rejected;
+    }
+
+    @Override
+    public long getFailed() {
+        return failures.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejections() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (UseExceptionType useExceptionType : UseExceptionType.values()) {
+            long count = rejections(useExceptionType);
+            if (count > 0)
+                counts.put(useExceptionType.name(), count);
+        }
+        return counts;
+    }
+
+    @Override
+    public double getMeanLatencyMicros() {
+        return latencies.mean() / 1000.0;
+    }
+
+    @Override
+    public double getP50LatencyMicros() {
+        return latencies.valueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99LatencyMicros() {
+        return latencies.valueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999LatencyMicros() {
+        return latencies.valueAtPercentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxLatencyMicros() {
+        return latencies.max() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        for (LongAdder rejection : rejections)
+            rejection.reset();
+        failures.reset();
+    }
+}
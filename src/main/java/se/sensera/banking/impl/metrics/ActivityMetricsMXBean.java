@@ -0,0 +1,32 @@
+package se.sensera.banking.impl.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the calls made for one {@link se.sensera.banking.exceptions.Activity}. Latencies are in microseconds.
+ */
+public interface ActivityMetricsMXBean {
+    String getActivity();
+
+    long getCalls();
+
+    long getSucceeded();
+
+    long getRejected();
+
+    long getFailed();
+
+    Map<String, Long> getRejections();
+
+    double getMeanLatencyMicros();
+
+    double getP50LatencyMicros();
+
+    double getP99LatencyMicros();
+
+    double getP999LatencyMicros();
+
+    double getMaxLatencyMicros();
+
+    void reset();
+}
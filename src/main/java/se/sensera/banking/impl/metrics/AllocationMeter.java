@@ -0,0 +1,47 @@
+package se.sensera.banking.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the bytes allocated by the current thread, using the thread allocation counter of HotSpot's
+ * {@link com.sun.management.ThreadMXBean}. Allocations made by other threads on behalf of an operation, such as a
+ * task handed to an executor, are not counted.
+ */
+public class AllocationMeter {
+    private static final com.sun.management.ThreadMXBean threads = threadMXBean();
+
+    private AllocationMeter() {
+    }
+
+    public static boolean isSupported() {
+        return threads != null && threads.isThreadAllocatedMemoryEnabled();
+    }
+
+    public static long allocatedBytes() {
+        if (!isSupported())
+            throw new IllegalStateException("Thread allocation counting not supported by this JVM");
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Average bytes allocated per call over {@code calls} calls, after {@code warmup} calls that give the JIT a chance
+     * to compile the operation and remove allocations that do not escape.
+     */
+    public static <E extends Exception> double bytesPerCall(int warmup, int calls, Operation<E> operation) throws E {
+        for (int i = 0; i < warmup; i++)
+            operation.run(i);
+        long before = allocatedBytes();
+        for (int i = 0; i < calls; i++)
+            operation.run(i);
+        return (double) (allocatedBytes() - before) / calls;
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return threadMXBean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threadMXBean : null;
+    }
+
+    public interface Operation<E extends Exception> {
+        void run(int n) throws E;
+    }
+}
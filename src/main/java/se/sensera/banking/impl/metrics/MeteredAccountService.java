@@ -0,0 +1,58 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Meters every call to an {@link AccountService}. Finds return lazy streams, for them only the time to set up the
+ * stream is measured.
+ */
+public class MeteredAccountService implements AccountService {
+    private final AccountService accountService;
+    private final ServiceMetrics metrics;
+
+    public MeteredAccountService(AccountService accountService, ServiceMetrics metrics) {
+        this.accountService = accountService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Account createAccount(String userId, String accountName) throws UseException {
+        return metrics.timed(Activity.CREATE_ACCOUNT, () -> accountService.createAccount(userId, accountName));
+    }
+
+    @Override
+    public Account changeAccount(String userId, String accountId, Consumer<ChangeAccount> changeAccountConsumer) throws UseException {
+        return metrics.timed(Activity.UPDATE_ACCOUNT, () -> accountService.changeAccount(userId, accountId, changeAccountConsumer));
+    }
+
+    @Override
+    public Account addUserToAccount(String userId, String accountId, String userIdToBeAssigned) throws UseException {
+        return metrics.timed(Activity.UPDATE_ACCOUNT, () -> accountService.addUserToAccount(userId, accountId, userIdToBeAssigned));
+    }
+
+    @Override
+    public Account removeUserFromAccount(String userId, String accountId, String userIdToBeAssigned) throws UseException {
+        return metrics.timed(Activity.UPDATE_ACCOUNT, () -> accountService.removeUserFromAccount(userId, accountId, userIdToBeAssigned));
+    }
+
+    @Override
+    public Account inactivateAccount(String userId, String accountId) throws UseException {
+        return metrics.timed(Activity.INACTIVATE_ACCOUNT, () -> accountService.inactivateAccount(userId, accountId));
+    }
+
+    @Override
+    public Stream<Account> findAccounts(String searchValue, String userId, Integer pageNumber, Integer pageSize, SortOrder sortOrder) throws UseException {
+        return metrics.timed(Activity.FIND_ACCOUNT, () -> accountService.findAccounts(searchValue, userId, pageNumber, pageSize, sortOrder));
+    }
+
+    @Override
+    public Stream<Account> findAccountsAfter(String afterName, Integer pageSize) {
+        return metrics.timedUnchecked(Activity.FIND_ACCOUNT, () -> accountService.findAccountsAfter(afterName, pageSize));
+    }
+}
@@ -0,0 +1,43 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.Transaction;
+import se.sensera.banking.TransactionResult;
+import se.sensera.banking.TransactionService;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+
+import java.util.function.Consumer;
+
+/**
+ * Meters every call to a {@link TransactionService}.
+ */
+public class MeteredTransactionService implements TransactionService {
+    private final TransactionService transactionService;
+    private final ServiceMetrics metrics;
+
+    public MeteredTransactionService(TransactionService transactionService, ServiceMetrics metrics) {
+        this.transactionService = transactionService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Transaction createTransaction(String created, String userId, String accountId, double amount) throws UseException {
+        return metrics.timed(Activity.CREATE_TRANSACTION, () -> transactionService.createTransaction(created, userId, accountId, amount));
+    }
+
+    @Override
+    public TransactionResult tryCreateTransaction(String created, String userId, String accountId, double amount) {
+        return metrics.timedUnchecked(Activity.CREATE_TRANSACTION,
+                () -> transactionService.tryCreateTransaction(created, userId, accountId, amount), TransactionResult::getRejection);
+    }
+
+    @Override
+    public double sum(String created, String userId, String accountId) throws UseException {
+        return metrics.timed(Activity.SUM_TRANSACTION, () -> transactionService.sum(created, userId, accountId));
+    }
+
+    @Override
+    public void addMonitor(Consumer<Transaction> monitor) {
+        transactionService.addMonitor(monitor);
+    }
+}
@@ -0,0 +1,60 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.User;
+import se.sensera.banking.UserService;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.utils.Page;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Meters every call to a {@link UserService}. Finds returning lazy streams are only measured up to the stream being
+ * set up, {@link #findPage} is measured in full.
+ */
+public class MeteredUserService implements UserService {
+    private final UserService userService;
+    private final ServiceMetrics metrics;
+
+    public MeteredUserService(UserService userService, ServiceMetrics metrics) {
+        this.userService = userService;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public User createUser(String name, String personalIdentificationNumber) throws UseException {
+        return metrics.timed(Activity.CREATE_USER, () -> userService.createUser(name, personalIdentificationNumber));
+    }
+
+    @Override
+    public User changeUser(String userId, Consumer<ChangeUser> changeUser) throws UseException {
+        return metrics.timed(Activity.UPDATE_USER, () -> userService.changeUser(userId, changeUser));
+    }
+
+    @Override
+    public User inactivateUser(String userId) throws UseException {
+        return metrics.timed(Activity.UPDATE_USER, () -> userService.inactivateUser(userId));
+    }
+
+    @Override
+    public Optional<User> getUser(String userId) {
+        return metrics.timedUnchecked(Activity.FIND_USER, () -> userService.getUser(userId));
+    }
+
+    @Override
+    public Stream<User> find(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder) {
+        return metrics.timedUnchecked(Activity.FIND_USER, () -> userService.find(searchString, pageNumber, pageSize, sortOrder));
+    }
+
+    @Override
+    public Page<User> findPage(String searchString, Integer pageNumber, Integer pageSize, SortOrder sortOrder) {
+        return metrics.timedUnchecked(Activity.FIND_USER, () -> userService.findPage(searchString, pageNumber, pageSize, sortOrder));
+    }
+
+    @Override
+    public Stream<User> findSimilar(String name, int maxDistance, Integer pageSize) {
+        return metrics.timedUnchecked(Activity.FIND_USER, () -> userService.findSimilar(name, maxDistance, pageSize));
+    }
+}
@@ -0,0 +1,45 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.exceptions.Activity;
+
+import java.util.function.Supplier;
+
+/**
+ * Times one call and the phases within it for a {@link SlowOperationLog}. Calls that are not sampled get
+ * {@link #NONE}, which times nothing.
+ */
+public class OperationTimer {
+    public static final OperationTimer NONE = new OperationTimer(null, null) {
+        @Override
+        public void phase(SlowOperation.Phase phase) {
+        }
+
+        @Override
+        void finish(String outcome, Supplier<Object[]> arguments) {
+        }
+    };
+
+    final SlowOperationLog log;
+    final Activity activity;
+    final long start = System.nanoTime();
+    final long[] phaseNanos = new long[SlowOperation.Phase.values().length];
+    private long phaseStart = start;
+
+    OperationTimer(SlowOperationLog log, Activity activity) {
+        this.log = log;
+        this.activity = activity;
+    }
+
+    /**
+     * Ends the given phase, it is charged the time since the previous phase ended or the call started.
+     */
+    public void phase(SlowOperation.Phase phase) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - phaseStart;
+        phaseStart = now;
+    }
+
+    void finish(String outcome, Supplier<Object[]> arguments) {
+        log.finish(this, outcome, arguments);
+    }
+}
@@ -0,0 +1,135 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * {@link ActivityMetrics} for every {@link Activity}, shared by the metered services. Registered metrics show up in
+ * JMX as {@code se.sensera.banking:type=ActivityMetrics,service=<name>,activity=<activity>}.
+ */
+public class ServiceMetrics implements Closeable {
+    public static final String DOMAIN = "se.sensera.banking";
+
+    private final String name;
+    private final Map<Activity, ActivityMetrics> metrics = new EnumMap<>(Activity.class);
+    private final List<ObjectName> registered = new ArrayList<>();
+    private MBeanServer mBeanServer;
+
+    public ServiceMetrics(String name) {
+        this.name = name;
+        for (Activity activity : Activity.values())
+            metrics.put(activity, new ActivityMetrics(activity));
+    }
+
+    public ActivityMetrics forActivity(Activity activity) {
+        return metrics.get(activity);
+    }
+
+    public <R> R timed(Activity activity, Call<R> call) throws UseException {
+        ActivityMetrics activityMetrics = metrics.get(activity);
+        long start = System.nanoTime();
+        try {
+            R result = call.call();
+            activityMetrics.succeeded(System.nanoTime() - start);
+            return result;
+        } catch (UseException e) {
+            activityMetrics.rejected(System.nanoTime() - start, e.getUserExceptionType());
+            throw e;
+        } catch (RuntimeException | Error e) {
+            activityMetrics.failed(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    public <R> R timedUnchecked(Activity activity, UncheckedCall<R> call) {
+        return timedUnchecked(activity, call, result -> null);
+    }
+
+    /**
+     * Times a call that reports rejections in its result, {@code rejectionOf} gives the rejection or null on success.
+     */
+    public <R> R timedUnchecked(Activity activity, UncheckedCall<R> call, Function<R, UseExceptionType> rejectionOf) {
+        ActivityMetrics activityMetrics = metrics.get(activity);
+        long start = System.nanoTime();
+        try {
+            R result = call.call();
+            UseExceptionType rejection = rejectionOf.apply(result);
+            if (rejection != null)
+                activityMetrics.rejected(System.nanoTime() - start, rejection);
+            else
+                activityMetrics.succeeded(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException | Error e) {
+            activityMetrics.failed(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    public ServiceMetrics registerMBeans() {
+        return registerMBeans(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public synchronized ServiceMetrics registerMBeans(MBeanServer mBeanServer) {
+        if (this.mBeanServer != null)
+            throw new IllegalStateException("Already registered " + name);
+        try {
+            for (Map.Entry<Activity, ActivityMetrics> entry : metrics.entrySet()) {
+                ObjectName objectName = objectName(entry.getKey());
+                mBeanServer.registerMBean(entry.getValue(), objectName);
+                registered.add(objectName);
+            }
+        } catch (JMException e) {
+            unregister(mBeanServer);
+            throw new IllegalStateException("Cannot register metrics " + name, e);
+        }
+        this.mBeanServer = mBeanServer;
+        return this;
+    }
+
+    public ObjectName objectName(Activity activity) {
+        try {
+            return new ObjectName(DOMAIN + ":type=ActivityMetrics,service=" + ObjectName.quote(name) + ",activity=" + activity.name());
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid metrics name " + name, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mBeanServer != null) {
+            unregister(mBeanServer);
+            mBeanServer = null;
+        }
+    }
+
+    private void unregister(MBeanServer mBeanServer) {
+        for (ObjectName objectName : registered) {
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+        registered.clear();
+    }
+
+    public interface Call<R> {
+        R call() throws UseException;
+    }
+
+    public interface UncheckedCall<R> {
+        R call();
+    }
+}
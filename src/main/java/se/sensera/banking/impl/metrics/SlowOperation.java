@@ -0,0 +1,60 @@
+package se.sensera.banking.impl.metrics;
+
+import lombok.Value;
+import se.sensera.banking.exceptions.Activity;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * One call that took longer than the threshold of its activity, as kept by a {@link SlowOperationLog}.
+ */
+@Value
+public class SlowOperation {
+    long sequence;
+    Instant started;
+    Activity activity;
+    List<String> arguments;
+    long durationNanos;
+    Map<Phase, Long> phaseNanos;
+    String outcome;
+    String threadName;
+    long threadId;
+
+    public String describe() {
+        String phases = phaseNanos.entrySet().stream()
+                .map(entry -> entry.getKey().getName() + "=" + millis(entry.getValue()))
+                .collect(Collectors.joining(" "));
+        return started + " " + activity + " " + millis(durationNanos) + " " + outcome
+                + " thread=" + threadName + "#" + threadId + " args=" + arguments
+                + (phases.isEmpty() ? "" : " " + phases);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1_000_000.0);
+    }
+
+    /**
+     * Steps of a service call that are timed separately. For a sum the scan of the account's transactions counts as
+     * the funds check.
+     */
+    public enum Phase {
+        LOOKUP("lookup"),
+        VALIDATION("validation"),
+        FUNDS_CHECK("funds-check"),
+        MONITOR_FAN_OUT("monitor-fan-out"),
+        SAVE("save");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package se.sensera.banking.impl.metrics;
+
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the latest calls that took longer than the threshold of their {@link Activity}, with their arguments, the
+ * time spent in every {@link SlowOperation.Phase} and the thread that made them.
+ * <p>
+ * Only a sampled fraction of the calls is timed, the rest run without any bookkeeping. Slow calls are written to a
+ * fixed size ring without locking, when the ring is full the oldest entry is overwritten.
+ */
+public class SlowOperationLog implements SlowOperationLogMXBean, Closeable {
+    /**
+     * Shared by every service built without a log of its own, it never times a call and can't be turned on.
+     */
+    public static final SlowOperationLog DISABLED = new Disabled();
+    public static final String SUCCEEDED = "SUCCEEDED";
+
+    private final AtomicReferenceArray<SlowOperation> ring;
+    private final int mask;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLongArray thresholdNanos = new AtomicLongArray(Activity.values().length);
+    private volatile double sampleRate;
+    private ObjectName registered;
+
+    /**
+     * @param capacity        slow calls kept, rounded up to a power of two
+     * @param sampleRate      fraction of the calls that are timed, between 0 and 1
+     * @param thresholdMillis threshold for every activity until set with {@link #setThreshold}
+     */
+    public SlowOperationLog(int capacity, double sampleRate, long thresholdMillis) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive " + capacity);
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        setSampleRate(sampleRate);
+        for (Activity activity : Activity.values())
+            setThreshold(activity, thresholdMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private SlowOperationLog() {
+        this.ring = new AtomicReferenceArray<>(1);
+        this.mask = 0;
+        for (int i = 0; i < thresholdNanos.length(); i++)
+            thresholdNanos.set(i, Long.MAX_VALUE);
+    }
+
+    public SlowOperationLog setThreshold(Activity activity, long threshold, TimeUnit unit) {
+        thresholdNanos.set(activity.ordinal(), threshold == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(threshold));
+        return this;
+    }
+
+    /**
+     * Starts timing a call, or returns {@link OperationTimer#NONE} when it is not sampled.
+     */
+    public OperationTimer start(Activity activity) {
+        double rate = sampleRate;
+        if (rate <= 0 || rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)
+            return OperationTimer.NONE;
+        return new OperationTimer(this, activity);
+    }
+
+    /**
+     * Times a call, {@code arguments} is only asked for the arguments when the call turns out to be slow.
+     */
+    public <R> R timed(Activity activity, Supplier<Object[]> arguments, TimedCall<R> call) throws UseException {
+        OperationTimer timer = start(activity);
+        try {
+            R result = call.call(timer);
+            timer.finish(SUCCEEDED, arguments);
+            return result;
+        } catch (UseException e) {
+            timer.finish(e.getUserExceptionType().name(), arguments);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            timer.finish(e.getClass().getSimpleName(), arguments);
+            throw e;
+        }
+    }
+
+    /**
+     * Times a call that reports rejections in its result, {@code rejectionOf} gives the rejection or null on success.
+     */
+    public <R> R timedUnchecked(Activity activity, Supplier<Object[]> arguments, Function<R, UseExceptionType> rejectionOf, UncheckedTimedCall<R> call) {
+        OperationTimer timer = start(activity);
+        try {
+            R result = call.call(timer);
+            UseExceptionType rejection = timer == OperationTimer.NONE ? null : rejectionOf.apply(result);
+            timer.finish(rejection != null ? rejection.name() : SUCCEEDED, arguments);
+            return result;
+        } catch (RuntimeException | Error e) {
+            timer.finish(e.getClass().getSimpleName(), arguments);
+            throw e;
+        }
+    }
+
+    void finish(OperationTimer timer, String outcome, Supplier<Object[]> arguments) {
+        long duration = System.nanoTime() - timer.start;
+        if (duration < thresholdNanos.get(timer.activity.ordinal()))
+            return;
+        Map<SlowOperation.Phase, Long> phases = new EnumMap<>(SlowOperation.Phase.class);
+        for (SlowOperation.Phase phase : SlowOperation.Phase.values()) {
+            if (timer.phaseNanos[phase.ordinal()] > 0)
+                phases.put(phase, timer.phaseNanos[phase.ordinal()]);
+        }
+        // Arguments are kept as text so the log does not hold on to entities
+        List<String> argumentTexts = Arrays.stream(arguments.get()).map(String::valueOf).collect(Collectors.toList());
+        Thread thread = Thread.currentThread();
+        long sequence = written.getAndIncrement();
+        ring.set((int) (sequence & mask), new SlowOperation(sequence, Instant.now().minusNanos(duration), timer.activity,
+                argumentTexts, duration, phases, outcome, thread.getName(), thread.getId()));
+    }
+
+    /**
+     * The slow calls still in the ring, oldest first.
+     */
+    public List<SlowOperation> snapshot() {
+        long end = written.get();
+        List<SlowOperation> operations = new ArrayList<>();
+        for (long sequence = Math.max(0, end - ring.length()); sequence < end; sequence++) {
+            SlowOperation operation = ring.get((int) (sequence & mask));
+            // Skip slots a writer has claimed but not filled yet, or already reused
+            if (operation != null && operation.getSequence() == sequence)
+                operations.add(operation);
+        }
+        return operations;
+    }
+
+    @Override
+    public long getRecorded() {
+        return written.get();
+    }
+
+    @Override
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1)
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1 " + sampleRate);
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public long getThresholdMillis(String activity) {
+        long nanos = thresholdNanos.get(Activity.valueOf(activity).ordinal());
+        return nanos == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public void setThresholdMillis(String activity, long millis) {
+        setThreshold(Activity.valueOf(activity), millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> dump() {
+        return snapshot().stream().map(SlowOperation::describe).collect(Collectors.toList());
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < ring.length(); i++)
+            ring.set(i, null);
+    }
+
+    /**
+     * Publishes the log as {@code se.sensera.banking:type=SlowOperationLog,service=<name>}.
+     */
+    public synchronized SlowOperationLog registerMBean(String name) {
+        if (registered != null)
+            throw new IllegalStateException("Already registered " + registered);
+        try {
+            ObjectName objectName = new ObjectName(ServiceMetrics.DOMAIN + ":type=SlowOperationLog,service=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registered = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register slow operation log " + name, e);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (registered != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            registered = null;
+        }
+    }
+
+    private static class Disabled extends SlowOperationLog {
+        @Override
+        public SlowOperationLog setThreshold(Activity activity, long threshold, TimeUnit unit) {
+            throw new UnsupportedOperationException("The disabled slow operation log can't be changed");
+        }
+
+        @Override
+        public void setSampleRate(double sampleRate) {
+            throw new UnsupportedOperationException("The disabled slow operation log can't be changed");
+        }
+
+        @Override
+        public SlowOperationLog registerMBean(String name) {
+            throw new UnsupportedOperationException("The disabled slow operation log can't be registered");
+        }
+    }
+
+    public interface TimedCall<R> {
+        R call(OperationTimer timer) throws UseException;
+    }
+
+    public interface UncheckedTimedCall<R> {
+        R call(OperationTimer timer);
+    }
+}
@@ -0,0 +1,22 @@
+package se.sensera.banking.impl.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of a {@link SlowOperationLog}. Thresholds are set per {@link se.sensera.banking.exceptions.Activity} name.
+ */
+public interface SlowOperationLogMXBean {
+    long getRecorded();
+
+    double getSampleRate();
+
+    void setSampleRate(double sampleRate);
+
+    long getThresholdMillis(String activity);
+
+    void setThresholdMillis(String activity, long millis);
+
+    List<String> dump();
+
+    void clear();
+}
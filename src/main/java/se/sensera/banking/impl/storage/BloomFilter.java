@@ -0,0 +1,82 @@
+package se.sensera.banking.impl.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class BloomFilter {
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final long[] bits;
+    private final int numHashes;
+
+    private BloomFilter(long[] bits, int numHashes) {
+        this.bits = bits;
+        this.numHashes = numHashes;
+    }
+
+    public static BloomFilter create(long expectedEntries) {
+        long entries = Math.max(1, expectedEntries);
+        long numBits = (long) Math.ceil(-entries * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        int numLongs = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (numBits + 63) / 64));
+        int numHashes = (int) Math.max(1, Math.round((double) numLongs * 64 / entries * Math.log(2)));
+        return new BloomFilter(new long[numLongs], Math.min(numHashes, 16));
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(numHashes);
+        out.writeInt(bits.length);
+        for (long word : bits)
+            out.writeLong(word);
+    }
+
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int numHashes = in.readInt();
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = in.readLong();
+        return new BloomFilter(bits, numHashes);
+    }
+
+    public int sizeInBytes() {
+        return 8 + bits.length * 8;
+    }
+
+    // 64 bit FNV-1a over the UTF-8 bytes, mixed so both halves are usable as independent hashes
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
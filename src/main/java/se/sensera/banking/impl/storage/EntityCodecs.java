@@ -0,0 +1,94 @@
+package se.sensera.banking.impl.storage;
+
+import se.sensera.banking.*;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.EntityResolver;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.UserImpl;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static se.sensera.banking.impl.storage.EntityCodec.readString;
+import static se.sensera.banking.impl.storage.EntityCodec.writeString;
+
+public interface EntityCodecs {
+
+    static EntityCodec<User> users() {
+        return new EntityCodec<>() {
+            @Override
+            public void write(User user, DataOutput out) throws IOException {
+                writeString(out, user.getId());
+                writeString(out, user.getName());
+                writeString(out, user.getPersonalIdentificationNumber());
+                out.writeBoolean(user.isActive());
+            }
+
+            @Override
+            public User read(DataInput in) throws IOException {
+                return new UserImpl(readString(in), readString(in), readString(in), in.readBoolean());
+            }
+        };
+    }
+
+    /**
+     * Accounts are stored with the ids of their owner and users, which are looked up again when the account is read.
+     */
+    static EntityCodec<Account> accounts(UsersRepository usersRepository) {
+        return new EntityCodec<>() {
+            @Override
+            public void write(Account account, DataOutput out) throws IOException {
+                writeString(out, account.getId());
+                writeString(out, account.getOwner().getId());
+                writeString(out, account.getName());
+                out.writeBoolean(account.isActive());
+                List<String> userIds = account.getUsers().map(User::getId).collect(Collectors.toList());
+                out.writeInt(userIds.size());
+                for (String userId : userIds)
+                    writeString(out, userId);
+            }
+
+            @Override
+            public Account read(DataInput in) throws IOException {
+                String id = readString(in);
+                User owner = user(readString(in));
+                AccountImpl account = new AccountImpl(id, owner, readString(in), in.readBoolean());
+                for (int i = in.readInt(); i > 0; i--)
+                    account.addUser(user(readString(in)));
+                return account;
+            }
+
+            private User user(String userId) {
+                return usersRepository.getEntityById(userId)
+                        .orElseThrow(() -> new IllegalStateException("Stored account refers to unknown user " + userId));
+            }
+        };
+    }
+
+    static EntityCodec<Transaction> transactions(UsersRepository usersRepository, AccountsRepository accountsRepository) {
+        EntityResolver resolver = new EntityResolver(usersRepository, accountsRepository);
+        return new EntityCodec<>() {
+            @Override
+            public void write(Transaction transaction, DataOutput out) throws IOException {
+                writeString(out, transaction.getId());
+                out.writeLong(transaction.getCreated().getTime());
+                writeString(out, TransactionImpl.userIdOf(transaction));
+                writeString(out, TransactionImpl.accountIdOf(transaction));
+                out.writeDouble(transaction.getAmount());
+            }
+
+            @Override
+            public Transaction read(DataInput in) throws IOException {
+                String id = readString(in);
+                Date created = new Date(in.readLong());
+                String userId = readString(in);
+                String accountId = readString(in);
+                return new TransactionImpl(id, created, userId, accountId, in.readDouble(), resolver);
+            }
+        };
+    }
+}
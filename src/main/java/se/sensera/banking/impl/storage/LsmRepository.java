@@ -0,0 +1,73 @@
+package se.sensera.banking.impl.storage;
+
+import se.sensera.banking.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Repository persisted in an {@link LsmStore}, entities are keyed by their id and every save replaces the stored
+ * version in place.
+ */
+public class LsmRepository<E extends Repository.Entity<String>> implements Repository<E, String>, Closeable {
+    private final LsmStore store;
+    private final EntityCodec<E> codec;
+
+    public LsmRepository(LsmStore store, EntityCodec<E> codec) {
+        this.store = store;
+        this.codec = codec;
+    }
+
+    @Override
+    public Optional<E> getEntityById(String id) {
+        if (id == null)
+            return Optional.empty();
+        return Optional.ofNullable(store.get(id)).map(codec::decode);
+    }
+
+    @Override
+    public Stream<E> all() {
+        return store.scan().map(entry -> codec.decode(entry.getValue()));
+    }
+
+    @Override
+    public E save(E entity) {
+        store.put(entity.getId(), codec.encode(entity));
+        return entity;
+    }
+
+    @Override
+    public E delete(E entity) {
+        store.delete(entity.getId());
+        return entity;
+    }
+
+    public LsmStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    public static class UsersLsmRepository extends LsmRepository<User> implements UsersRepository {
+        public UsersLsmRepository(LsmStore store) {
+            super(store, EntityCodecs.users());
+        }
+    }
+
+    public static class AccountsLsmRepository extends LsmRepository<Account> implements AccountsRepository {
+        public AccountsLsmRepository(LsmStore store, UsersRepository usersRepository) {
+            super(store, EntityCodecs.accounts(usersRepository));
+        }
+    }
+
+    public static class TransactionsLsmRepository extends LsmRepository<Transaction> implements TransactionsRepository {
+        public TransactionsLsmRepository(LsmStore store, UsersRepository usersRepository, AccountsRepository accountsRepository) {
+            super(store, EntityCodecs.transactions(usersRepository, accountsRepository));
+        }
+    }
+}
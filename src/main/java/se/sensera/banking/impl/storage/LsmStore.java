@@ -0,0 +1,478 @@
+package se.sensera.banking.impl.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Embedded log structured merge tree. Writes go to a write ahead log and a sorted memtable, full memtables are flushed
+ * to immutable {@link SSTable} files by a background thread.
+ * <p>
+ * Compaction is size tiered: starting from the newest table, a run of adjacent tables where each is no larger than the
+ * newer tables of the run together is merged once it is {@code compactionThreshold} tables long. Older tables are
+ * left alone until the newer data has grown to their size, so table sizes grow geometrically and every entry is
+ * rewritten a logarithmic number of times instead of on every compaction. A failed background flush or compaction is thrown to the next writer, after a failed flush the
+ * store stays read only until it is reopened and recovers from its logs.
+ */
+public class LsmStore implements Closeable {
+    static final byte[] TOMBSTONE = new byte[0];
+
+    public static final long DEFAULT_MEMTABLE_LIMIT = 4 * 1024 * 1024;
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 4;
+    static final int SCAN_BATCH = 1024;
+
+    private final Path directory;
+    private final long memtableLimit;
+    private final int compactionThreshold;
+    private final boolean syncWrites;
+    private final boolean mappedReads;
+    private final AtomicLong generations = new AtomicLong();
+    private final ReadWriteLock versionLock = new ReentrantReadWriteLock();
+    private final Object writeMutex = new Object();
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lsm-background");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicReference<Exception> compactionFailure = new AtomicReference<>();
+    private final AtomicReference<IOException> releaseFailure = new AtomicReference<>();
+    private volatile Exception flushFailure;
+
+    private volatile Version version;
+    private WriteAheadLog wal;
+
+    public LsmStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MEMTABLE_LIMIT, DEFAULT_COMPACTION_THRESHOLD, false);
+    }
+
+    public LsmStore(Path directory, long memtableLimit, int compactionThreshold, boolean syncWrites) throws IOException {
+        this(directory, memtableLimit, compactionThreshold, syncWrites, false);
+    }
+
+    /**
+     * @param syncWrites  fsync the write ahead log on every write instead of leaving it to the operating system
+     * @param mappedReads memory map the table files instead of reading them through positional reads
+     */
+    public LsmStore(Path directory, long memtableLimit, int compactionThreshold, boolean syncWrites, boolean mappedReads) throws IOException {
+        this.directory = directory;
+        this.memtableLimit = memtableLimit;
+        this.compactionThreshold = Math.max(2, compactionThreshold);
+        this.syncWrites = syncWrites;
+        this.mappedReads = mappedReads;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    public byte[] get(String key) {
+        versionLock.readLock().lock();
+        try {
+            Version current = version;
+            byte[] value = current.active.get(key);
+            if (value == null && current.flushing != null)
+                value = current.flushing.get(key);
+            for (Iterator<SSTable> tables = current.tables.iterator(); value == null && tables.hasNext(); )
+                value = tables.next().get(key);
+            return value == TOMBSTONE ? null : value;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            versionLock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] value) {
+        write(key, Objects.requireNonNull(value));
+    }
+
+    public void delete(String key) {
+        write(key, TOMBSTONE);
+    }
+
+    /**
+     * Streams all live entries in key order. Entries are read {@value #SCAN_BATCH} at a time from the current tables,
+     * which are only held while a batch is read, so the stream needs no closing and is free to stop early. Writes made
+     * during the scan may or may not be seen.
+     */
+    public Stream<Map.Entry<String, byte[]>> scan() {
+        Iterator<Map.Entry<String, byte[]>> live = new Iterator<>() {
+            final Deque<Map.Entry<String, byte[]>> batch = new ArrayDeque<>();
+            String lastKey;
+            boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                while (batch.isEmpty() && !exhausted) {
+                    lastKey = readBatch(lastKey, batch);
+                    exhausted = lastKey == null;
+                }
+                return !batch.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return batch.poll();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(live,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    // Adds the live entries among the next SCAN_BATCH keys after the given one, returns the last key read or null at the end
+    private String readBatch(String after, Collection<Map.Entry<String, byte[]>> batch) {
+        List<SSTable> tables = new ArrayList<>();
+        List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+        versionLock.readLock().lock();
+        try {
+            Version current = version;
+            sources.add(current.active.iterator(after));
+            if (current.flushing != null)
+                sources.add(current.flushing.iterator(after));
+            for (SSTable table : current.tables) {
+                if (table.acquire()) {
+                    tables.add(table);
+                    sources.add(table.iterator(after));
+                }
+            }
+        } finally {
+            versionLock.readLock().unlock();
+        }
+        try {
+            MergingIterator merged = new MergingIterator(sources);
+            String last = null;
+            for (int n = 0; n < SCAN_BATCH && merged.hasNext(); n++) {
+                Map.Entry<String, byte[]> entry = merged.next();
+                last = entry.getKey();
+                if (entry.getValue() != TOMBSTONE)
+                    batch.add(entry);
+            }
+            return merged.hasNext() ? last : null;
+        } finally {
+            tables.forEach(this::release);
+        }
+    }
+
+    /**
+     * Writes the current memtable to a table and waits until it is done.
+     */
+    public void flush() {
+        for (;;) {
+            await();
+            checkBackground();
+            synchronized (writeMutex) {
+                if (version.active.isEmpty())
+                    break;
+                if (version.flushing == null)
+                    rotate();
+            }
+        }
+        await();
+    }
+
+    /**
+     * Merges all tables into one, dropping deleted entries, and waits until it is done.
+     */
+    public void compact() {
+        await();
+        submitCompaction(() -> compactTables(version.tables));
+        await();
+        checkBackground();
+    }
+
+    public int tableCount() {
+        return version.tables.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true))
+            return;
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeMutex) {
+            wal.close();
+        }
+        for (SSTable table : version.tables)
+            table.close();
+    }
+
+    private void write(String key, byte[] value) {
+        if (closed.get())
+            throw new IllegalStateException("Store is closed " + directory);
+        checkBackground();
+        synchronized (writeMutex) {
+            try {
+                wal.append(key, value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Version current = version;
+            current.active.put(key, value);
+            if (current.flushing == null && current.active.sizeInBytes() >= memtableLimit)
+                rotate();
+        }
+    }
+
+    // Caller holds writeMutex
+    private void rotate() {
+        WriteAheadLog retiredWal = wal;
+        try {
+            wal = new WriteAheadLog(WriteAheadLog.fileName(directory, generations.incrementAndGet()), syncWrites);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        versionLock.writeLock().lock();
+        try {
+            if (version.flushing != null)
+                throw new IllegalStateException("Flush already in progress");
+            version = new Version(new Memtable(), version.active, version.tables);
+        } finally {
+            versionLock.writeLock().unlock();
+        }
+        submitFlush(() -> flushMemtable(retiredWal));
+        submitCompaction(() -> {
+            // A merged run can complete the next tier, keep going until no tier is full
+            for (List<SSTable> run = tieredRun(); !run.isEmpty(); run = tieredRun())
+                compactTables(run);
+        });
+    }
+
+    private void flushMemtable(WriteAheadLog retiredWal) throws IOException {
+        Memtable memtable = version.flushing;
+        long generation = generations.incrementAndGet();
+        SSTable table = SSTable.write(directory, generation, generation, generation,
+                memtable.iterator(), memtable.size(), syncWrites, mappedReads);
+        versionLock.writeLock().lock();
+        try {
+            List<SSTable> tables = new ArrayList<>(version.tables.size() + 1);
+            tables.add(table);
+            tables.addAll(version.tables);
+            version = new Version(version.active, null, tables);
+        } finally {
+            versionLock.writeLock().unlock();
+        }
+        retiredWal.close();
+        Files.deleteIfExists(retiredWal.getPath());
+    }
+
+    // The newest run of compactionThreshold or more adjacent tables where each is no larger than the newer ones together
+    private List<SSTable> tieredRun() {
+        List<SSTable> tables = version.tables;
+        for (int start = 0; start + compactionThreshold <= tables.size(); start++) {
+            long runSize = tables.get(start).sizeInBytes();
+            int end = start + 1;
+            while (end < tables.size() && tables.get(end).sizeInBytes() <= runSize)
+                runSize += tables.get(end++).sizeInBytes();
+            if (end - start >= compactionThreshold)
+                return tables.subList(start, end);
+        }
+        return List.of();
+    }
+
+    // Merges adjacent tables into one that takes their place, only the background thread changes the tables
+    private void compactTables(List<SSTable> run) throws IOException {
+        if (run.isEmpty())
+            return;
+        List<SSTable> snapshot = new ArrayList<>();
+        boolean includesOldest;
+        versionLock.readLock().lock();
+        try {
+            includesOldest = run.get(run.size() - 1) == version.tables.get(version.tables.size() - 1);
+            for (SSTable table : run)
+                if (table.acquire())
+                    snapshot.add(table);
+        } finally {
+            versionLock.readLock().unlock();
+        }
+        try {
+            Iterator<Map.Entry<String, byte[]>> merged = new MergingIterator(snapshot.stream()
+                    .map(SSTable::iterator)
+                    .collect(Collectors.toList()));
+            // Tombstones can only be dropped when no older table is left for them to hide
+            Iterator<Map.Entry<String, byte[]>> entries = !includesOldest ? merged : new Iterator<>() {
+                Map.Entry<String, byte[]> next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && merged.hasNext()) {
+                        Map.Entry<String, byte[]> entry = merged.next();
+                        if (entry.getValue() != TOMBSTONE)
+                            next = entry;
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<String, byte[]> next() {
+                    Map.Entry<String, byte[]> entry = next;
+                    next = null;
+                    return entry;
+                }
+            };
+            long expected = snapshot.stream().mapToLong(SSTable::getEntryCount).sum();
+            long firstSequence = snapshot.stream().mapToLong(SSTable::getFirstSequence).min().orElse(-1);
+            long sequence = snapshot.stream().mapToLong(SSTable::getSequence).max().orElse(-1);
+            SSTable compacted = SSTable.write(directory, generations.incrementAndGet(), firstSequence, sequence,
+                    entries, expected, syncWrites, mappedReads);
+            versionLock.writeLock().lock();
+            try {
+                List<SSTable> tables = new ArrayList<>(version.tables);
+                int position = tables.indexOf(snapshot.get(0));
+                tables.removeAll(snapshot);
+                tables.add(position, compacted);
+                version = new Version(version.active, version.flushing, tables);
+            } finally {
+                versionLock.writeLock().unlock();
+            }
+            snapshot.forEach(this::retire);
+        } finally {
+            snapshot.forEach(this::release);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<SSTable> tables = new ArrayList<>();
+        List<Path> logs;
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> all = files.collect(Collectors.toList());
+            for (Path file : all) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp"))
+                    Files.delete(file);
+                else if (name.endsWith(SSTable.SUFFIX))
+                    tables.add(SSTable.open(file, mappedReads));
+            }
+            logs = all.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(WriteAheadLog.SUFFIX))
+                    .sorted(Comparator.comparingLong(SSTable::generationOf))
+                    .collect(Collectors.toList());
+            all.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(SSTable.SUFFIX) || logs.contains(file))
+                    .mapToLong(SSTable::generationOf)
+                    .max()
+                    .ifPresent(generations::set);
+        }
+
+        // A compaction that crashed before removing its inputs leaves tables that are already merged into a newer one
+        List<SSTable> live = new ArrayList<>();
+        for (SSTable table : tables) {
+            if (tables.stream().anyMatch(other -> other.covers(table)))
+                table.retire();
+            else
+                live.add(table);
+        }
+        live.sort(Comparator.comparingLong(SSTable::getSequence).reversed());
+
+        Memtable recovered = new Memtable();
+        for (Path log : logs)
+            WriteAheadLog.replay(log, recovered::put);
+        if (!recovered.isEmpty()) {
+            long generation = generations.incrementAndGet();
+            live.add(0, SSTable.write(directory, generation, generation, generation,
+                    recovered.iterator(), recovered.size(), true, mappedReads));
+        }
+        for (Path log : logs)
+            Files.delete(log);
+
+        version = new Version(new Memtable(), null, live);
+        wal = new WriteAheadLog(WriteAheadLog.fileName(directory, generations.incrementAndGet()), syncWrites);
+    }
+
+    // The memtable stays in flushing and keeps its log, so nothing is lost but no further flush can start
+    private void submitFlush(Task task) {
+        background.submit(() -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                flushFailure = e;
+            }
+        });
+    }
+
+    private void submitCompaction(Task task) {
+        background.submit(() -> {
+            if (flushFailure != null)
+                return;
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                compactionFailure.set(e);
+            }
+        });
+    }
+
+    private void checkBackground() {
+        if (flushFailure != null)
+            throw new IllegalStateException("Flush failed, store is read only until reopened " + directory, flushFailure);
+        Exception failure = compactionFailure.getAndSet(null);
+        if (failure != null)
+            throw new IllegalStateException("Compaction failed " + directory, failure);
+        IOException leaked = releaseFailure.getAndSet(null);
+        if (leaked != null)
+            throw new IllegalStateException("Table file of a dropped table could not be removed " + directory, leaked);
+    }
+
+    // Readers release tables in finally blocks, a file left behind is reported by the next write instead
+    private void release(SSTable table) {
+        try {
+            table.release();
+        } catch (IOException e) {
+            releaseFailure.set(e);
+        }
+    }
+
+    private void retire(SSTable table) {
+        try {
+            table.retire();
+        } catch (IOException e) {
+            releaseFailure.set(e);
+        }
+    }
+
+    private void await() {
+        try {
+            background.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static class Version {
+        final Memtable active;
+        final Memtable flushing;
+        final List<SSTable> tables;
+
+        Version(Memtable active, Memtable flushing, List<SSTable> tables) {
+            this.active = active;
+            this.flushing = flushing;
+            this.tables = Collections.unmodifiableList(tables);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package se.sensera.banking.impl.storage;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+class Memtable {
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final ConcurrentSkipListMap<String, byte[]> entries = new ConcurrentSkipListMap<>();
+    private final AtomicLong sizeInBytes = new AtomicLong();
+
+    void put(String key, byte[] value) {
+        entries.put(key, value);
+        sizeInBytes.addAndGet(ENTRY_OVERHEAD + 2L * key.length() + value.length);
+    }
+
+    byte[] get(String key) {
+        return entries.get(key);
+    }
+
+    Iterator<Map.Entry<String, byte[]>> iterator() {
+        return entries.entrySet().iterator();
+    }
+
+    Iterator<Map.Entry<String, byte[]>> iterator(String after) {
+        return after == null ? iterator() : entries.tailMap(after, false).entrySet().iterator();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    long sizeInBytes() {
+        return sizeInBytes.get();
+    }
+}
@@ -0,0 +1,61 @@
+package se.sensera.banking.impl.storage;
+
+import java.util.*;
+
+/**
+ * Merges sorted sources into one sorted sequence. Sources are given newest first and when several of them hold the
+ * same key only the newest entry is returned.
+ */
+class MergingIterator implements Iterator<Map.Entry<String, byte[]>> {
+    private final PriorityQueue<Head> heads = new PriorityQueue<>();
+
+    MergingIterator(List<Iterator<Map.Entry<String, byte[]>>> sources) {
+        for (int i = 0; i < sources.size(); i++) {
+            Iterator<Map.Entry<String, byte[]>> source = sources.get(i);
+            if (source.hasNext())
+                heads.add(new Head(i, source, source.next()));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<String, byte[]> next() {
+        Head head = heads.poll();
+        if (head == null)
+            throw new NoSuchElementException();
+        Map.Entry<String, byte[]> result = head.entry;
+        advance(head);
+        while (!heads.isEmpty() && heads.peek().entry.getKey().equals(result.getKey()))
+            advance(heads.poll());
+        return result;
+    }
+
+    private void advance(Head head) {
+        if (head.source.hasNext()) {
+            head.entry = head.source.next();
+            heads.add(head);
+        }
+    }
+
+    private static class Head implements Comparable<Head> {
+        final int priority;
+        final Iterator<Map.Entry<String, byte[]>> source;
+        Map.Entry<String, byte[]> entry;
+
+        Head(int priority, Iterator<Map.Entry<String, byte[]>> source, Map.Entry<String, byte[]> entry) {
+            this.priority = priority;
+            this.source = source;
+            this.entry = entry;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int compare = entry.getKey().compareTo(other.entry.getKey());
+            return compare != 0 ? compare : Integer.compare(priority, other.priority);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package se.sensera.banking.impl.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable sorted string table. Keys are stored in blocks of {@value #BLOCK_ENTRIES} entries, only the first key of
+ * every block is kept in memory together with a bloom filter, so a point lookup costs at most one positional read.
+ * <p>
+ * A table covers the range of sequences from {@link #getFirstSequence()} to {@link #getSequence()}: a flushed table
+ * has the generation it was written with as both, a compacted table the range of all tables merged into it. Tables
+ * with higher sequences hold newer entries.
+ */
+public class SSTable implements Closeable {
+    static final String SUFFIX = ".sst";
+    private static final int MAGIC = 0x4c534d32;
+    private static final int FOOTER_SIZE = 5 * Long.BYTES + Integer.BYTES;
+    private static final int BLOCK_ENTRIES = 16;
+
+    private final Path path;
+    private final long generation;
+    private final long firstSequence;
+    private final long sequence;
+    private final long entryCount;
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped;
+    private final String[] blockKeys;
+    private final long[] blockOffsets;
+    private final long dataEnd;
+    private final BloomFilter bloomFilter;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private SSTable(Path path, long generation, long firstSequence, long sequence, long entryCount, FileChannel channel, MappedByteBuffer mapped,
+                    String[] blockKeys, long[] blockOffsets, long dataEnd, BloomFilter bloomFilter) {
+        this.path = path;
+        this.generation = generation;
+        this.firstSequence = firstSequence;
+        this.sequence = sequence;
+        this.entryCount = entryCount;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.blockKeys = blockKeys;
+        this.blockOffsets = blockOffsets;
+        this.dataEnd = dataEnd;
+        this.bloomFilter = bloomFilter;
+    }
+
+    static Path fileName(Path directory, long generation) {
+        return directory.resolve(String.format("%08d%s", generation, SUFFIX));
+    }
+
+    static long generationOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+
+    static SSTable write(Path directory, long generation, long firstSequence, long sequence, Iterator<Map.Entry<String, byte[]>> entries,
+                         long expectedEntries, boolean sync, boolean mapped) throws IOException {
+        Path target = fileName(directory, generation);
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+        BloomFilter bloomFilter = BloomFilter.create(expectedEntries);
+        List<String> blockKeys = new ArrayList<>();
+        List<Long> blockOffsets = new ArrayList<>();
+        long offset = 0;
+        long count = 0;
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            while (entries.hasNext()) {
+                Map.Entry<String, byte[]> entry = entries.next();
+                if (count % BLOCK_ENTRIES == 0) {
+                    blockKeys.add(entry.getKey());
+                    blockOffsets.add(offset);
+                }
+                bloomFilter.add(entry.getKey());
+                offset += writeEntry(out, entry.getKey(), entry.getValue());
+                count++;
+            }
+            long indexOffset = offset;
+            out.writeInt(blockKeys.size());
+            offset += Integer.BYTES;
+            for (int i = 0; i < blockKeys.size(); i++) {
+                byte[] key = blockKeys.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(blockOffsets.get(i));
+                offset += Integer.BYTES + key.length + Long.BYTES;
+            }
+            long bloomOffset = offset;
+            bloomFilter.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(count);
+            out.writeLong(firstSequence);
+            out.writeLong(sequence);
+            out.writeInt(MAGIC);
+            out.flush();
+            if (sync)
+                file.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(target, mapped);
+    }
+
+    /**
+     * @param mapped when true the table is memory mapped and lookups read straight from the page cache
+     */
+    static SSTable open(Path path, boolean mapped) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE)
+                throw new IOException("Truncated table " + path);
+            ByteBuffer footer = read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long entryCount = footer.getLong();
+            long firstSequence = footer.getLong();
+            long sequence = footer.getLong();
+            if (footer.getInt() != MAGIC)
+                throw new IOException("Not a table " + path);
+
+            ByteBuffer index = read(channel, indexOffset, (int) (bloomOffset - indexOffset));
+            int blocks = index.getInt();
+            String[] blockKeys = new String[blocks];
+            long[] blockOffsets = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockKeys[i] = readString(index);
+                blockOffsets[i] = index.getLong();
+            }
+            ByteBuffer bloom = read(channel, bloomOffset, (int) (size - FOOTER_SIZE - bloomOffset));
+            BloomFilter bloomFilter = BloomFilter.readFrom(new DataInputStream(
+                    new ByteArrayInputStream(bloom.array(), bloom.arrayOffset(), bloom.remaining())));
+            MappedByteBuffer mappedData = mapped && indexOffset <= Integer.MAX_VALUE
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, indexOffset)
+                    : null;
+            return new SSTable(path, generationOf(path), firstSequence, sequence, entryCount, channel, mappedData,
+                    blockKeys, blockOffsets, indexOffset, bloomFilter);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getFirstSequence() {
+        return firstSequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * True when the other table was one of the inputs of the compaction that wrote this one.
+     */
+    boolean covers(SSTable other) {
+        return other != this && generation > other.generation
+                && firstSequence <= other.firstSequence && other.sequence <= sequence;
+    }
+
+    public long sizeInBytes() {
+        return dataEnd;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the stored value, {@link LsmStore#TOMBSTONE} if the key was deleted or null if the table knows nothing of it
+     */
+    byte[] get(String key) throws IOException {
+        if (!bloomFilter.mightContain(key))
+            return null;
+        int block = Arrays.binarySearch(blockKeys, key);
+        if (block < 0)
+            block = -block - 2;
+        if (block < 0)
+            return null;
+        ByteBuffer buffer = readBlock(block);
+        while (buffer.hasRemaining()) {
+            String entryKey = readString(buffer);
+            boolean tombstone = buffer.get() != 0;
+            int length = buffer.getInt();
+            int compare = entryKey.compareTo(key);
+            if (compare == 0) {
+                if (tombstone)
+                    return LsmStore.TOMBSTONE;
+                byte[] value = new byte[length];
+                buffer.get(value);
+                return value;
+            }
+            if (compare > 0)
+                return null;
+            buffer.position(buffer.position() + length);
+        }
+        return null;
+    }
+
+    Iterator<Map.Entry<String, byte[]>> iterator() {
+        return iterator(null);
+    }
+
+    /**
+     * Entries with keys after the given one, all entries when it is null. Reading starts at the block holding the key.
+     */
+    Iterator<Map.Entry<String, byte[]>> iterator(String after) {
+        return new Iterator<>() {
+            int block = after == null ? 0 : startBlock(after);
+            ByteBuffer buffer;
+            Map.Entry<String, byte[]> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    while (buffer == null || !buffer.hasRemaining()) {
+                        if (block >= blockOffsets.length)
+                            return false;
+                        try {
+                            buffer = readBlock(block++);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    String key = readString(buffer);
+                    boolean tombstone = buffer.get() != 0;
+                    byte[] value = new byte[buffer.getInt()];
+                    buffer.get(value);
+                    if (after == null || key.compareTo(after) > 0)
+                        next = new AbstractMap.SimpleImmutableEntry<>(key, tombstone ? LsmStore.TOMBSTONE : value);
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Map.Entry<String, byte[]> entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    private int startBlock(String key) {
+        int block = Arrays.binarySearch(blockKeys, key);
+        return block >= 0 ? block : Math.max(0, -block - 2);
+    }
+
+    boolean acquire() {
+        for (;;) {
+            int current = references.get();
+            if (current <= 0)
+                return false;
+            if (references.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Fails when this was the last reference and the file could not be removed.
+     */
+    void release() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Drops the table once the last reader is done with it, the file is removed from disk at that point.
+     */
+    void retire() throws IOException {
+        release();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        long start = blockOffsets[block];
+        long end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : dataEnd;
+        if (mapped != null)
+            return mapped.duplicate().position((int) start).limit((int) end).slice();
+        return read(channel, start, (int) (end - start));
+    }
+
+    static int writeEntry(DataOutput out, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        boolean tombstone = value == LsmStore.TOMBSTONE;
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeByte(tombstone ? 1 : 0);
+        out.writeInt(tombstone ? 0 : value.length);
+        if (!tombstone)
+            out.write(value);
+        return Integer.BYTES + keyBytes.length + 1 + Integer.BYTES + (tombstone ? 0 : value.length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Unexpected end of table at " + (position + buffer.position()));
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,87 @@
+package se.sensera.banking.impl.storage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of the writes held by a memtable, replayed when the store is reopened after a crash.
+ * Every record carries a checksum so a torn write at the tail is detected and ignored.
+ */
+public class WriteAheadLog implements Closeable {
+    static final String SUFFIX = ".wal";
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final Path path;
+    private final FileOutputStream file;
+    private final DataOutputStream out;
+    private final boolean sync;
+
+    WriteAheadLog(Path path, boolean sync) throws IOException {
+        this.path = path;
+        this.file = new FileOutputStream(path.toFile(), true);
+        this.out = new DataOutputStream(new BufferedOutputStream(file, 16 * 1024));
+        this.sync = sync;
+    }
+
+    static Path fileName(Path directory, long generation) {
+        return directory.resolve(String.format("%08d%s", generation, SUFFIX));
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    synchronized void append(String key, byte[] value) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(key.length() + value.length + 16);
+        SSTable.writeEntry(new DataOutputStream(record), key, value);
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray());
+        out.writeInt(record.size());
+        record.writeTo(out);
+        out.writeLong(crc.getValue());
+        out.flush();
+        if (sync)
+            file.getFD().sync();
+    }
+
+    static void replay(Path path, BiConsumer<String, byte[]> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            for (;;) {
+                byte[] record;
+                long checksum;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE)
+                        return;
+                    record = new byte[length];
+                    in.readFully(record);
+                    checksum = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                if (crc.getValue() != checksum)
+                    return;
+                DataInputStream entry = new DataInputStream(new ByteArrayInputStream(record));
+                byte[] key = new byte[entry.readInt()];
+                entry.readFully(key);
+                boolean tombstone = entry.readByte() != 0;
+                byte[] value = new byte[entry.readInt()];
+                entry.readFully(value);
+                consumer.accept(new String(key, StandardCharsets.UTF_8), tombstone ? LsmStore.TOMBSTONE : value);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.flush();
+        file.getFD().sync();
+        out.close();
+    }
+}
@@ -0,0 +1,52 @@
+package se.sensera.banking.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code limit} smallest elements offered to it and counts all of them. The heap is ordered with the
+ * largest kept element on top so it can be dropped when a smaller one arrives.
+ */
+class BoundedHeap<E> {
+    private final Comparator<? super E> comparator;
+    private final int limit;
+    private final PriorityQueue<E> heap;
+    private long count;
+
+    BoundedHeap(Comparator<? super E> comparator, int limit) {
+        this.comparator = comparator;
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, comparator.reversed());
+    }
+
+    void offer(E element) {
+        count++;
+        if (limit == 0)
+            return;
+        if (heap.size() < limit) {
+            heap.add(element);
+        } else if (comparator.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    BoundedHeap<E> merge(BoundedHeap<E> other) {
+        long otherCount = other.count;
+        other.heap.forEach(this::offer);
+        count += otherCount - other.heap.size();
+        return this;
+    }
+
+    long count() {
+        return count;
+    }
+
+    List<E> sorted() {
+        List<E> sorted = new ArrayList<>(heap);
+        sorted.sort(comparator);
+        return sorted;
+    }
+}
@@ -1,36 +1,72 @@
 package se.sensera.banking.utils;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 public interface ListUtils {
 
+    /**
+     * Lazily skips to the page, only the elements up to the end of the page are ever read from the stream.
+     * Without a page size the page number is the number of elements to skip.
+     */
     static <E> Stream<E> applyPage(Stream<E> stream, Integer pageNumber, Integer pageSize) {
-        if (pageNumber != null) {
-            List<E> intermediateList = stream.collect(Collectors.toList());
-            if (pageSize == null)
-                try {
-                    return intermediateList
-                            .subList(pageNumber, intermediateList.size())
-                            .stream();
-                } catch (Exception e) {
-                    return Stream.empty();
-                }
-            else
-                try {
-                    int fromIndex = pageNumber * pageSize;
-                    int toIndex = pageNumber > 0 ? pageNumber * (pageSize + 1) : pageSize;
-                    if (toIndex > intermediateList.size())
-                        toIndex = intermediateList.size();
-                    return intermediateList
-                            .subList(fromIndex, toIndex)
-                            .stream();
-                } catch (Exception e) {
-                    return Stream.empty();
-                }
-        } else if (pageSize != null)
-            return stream.limit(pageSize);
+        if ((pageNumber != null && pageNumber < 0) || (pageSize != null && pageSize < 0))
+            return Stream.empty();
+        if (pageNumber != null)
+            stream = stream.skip(pageSize == null ? pageNumber : (long) pageNumber * pageSize);
+        if (pageSize != null)
+            stream = stream.limit(pageSize);
         return stream;
     }
+
+    /**
+     * Keyset page of a stream sorted on {@code key}: the first {@code pageSize} elements with a key after the
+     * cursor, or from the start when the cursor is null. Unlike numbered pages the cost does not grow with the
+     * position of the page.
+     */
+    static <E, K extends Comparable<? super K>> Stream<E> applyPageAfter(Stream<E> sorted, Function<E, K> key, K after, Integer pageSize) {
+        if (after != null)
+            sorted = sorted.dropWhile(element -> key.apply(element).compareTo(after) <= 0);
+        return applyPage(sorted, null, pageSize);
+    }
+
+    /**
+     * Reads the page in encounter order while counting every element of the stream.
+     */
+    static <E> Page<E> countedPage(Stream<E> stream, Integer pageNumber, Integer pageSize) {
+        boolean negative = (pageNumber != null && pageNumber < 0) || (pageSize != null && pageSize < 0);
+        long fromIndex = pageNumber == null ? 0 : pageSize == null ? pageNumber : (long) pageNumber * pageSize;
+        long toIndex = negative ? fromIndex : pageSize == null ? Long.MAX_VALUE : fromIndex + pageSize;
+        List<E> items = new ArrayList<>();
+        long[] count = {0};
+        stream.sequential().forEachOrdered(element -> {
+            if (count[0] >= fromIndex && count[0] < toIndex)
+                items.add(element);
+            count[0]++;
+        });
+        return new Page<>(items, count[0]);
+    }
+
+    /**
+     * Collects page {@code pageNumber} of {@code pageSize} elements in the order of the comparator without sorting the
+     * whole stream, only the elements up to the end of the page are kept in a bounded heap. Works on parallel streams.
+     */
+    static <E> Collector<E, ?, Page<E>> sortedPage(Comparator<? super E> comparator, int pageNumber, int pageSize) {
+        long fromIndex = (long) pageNumber * pageSize;
+        // The end of the page is capped at what a heap can hold, pages past it are empty and only counted
+        int limit = pageNumber < 0 || pageSize < 0 ? 0 : (int) Math.min(fromIndex + pageSize, Integer.MAX_VALUE - 8);
+        return Collector.of(
+                () -> new BoundedHeap<E>(comparator, limit),
+                BoundedHeap::offer,
+                BoundedHeap::merge,
+                heap -> {
+                    List<E> top = heap.sorted();
+                    List<E> items = limit > 0 && fromIndex < top.size() ? new ArrayList<>(top.subList((int) fromIndex, top.size())) : List.of();
+                    return new Page<>(items, heap.count());
+                });
+    }
 }
@@ -0,0 +1,14 @@
+package se.sensera.banking.utils;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One page of a search together with the number of hits the whole search had.
+ */
+@Value
+public class Page<E> {
+    List<E> items;
+    long totalHits;
+}
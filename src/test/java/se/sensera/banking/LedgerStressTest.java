@@ -0,0 +1,209 @@
+package se.sensera.banking;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.RepeatedTest;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.TransactionServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Runs withdrawals, deposits, transfers and account changes from many threads at once, in a random order per
+ * round, and then checks the ledger invariants: no account is ever overdrawn, every accepted transaction is stored
+ * exactly once and adds up to the sums the service reports, every stored transaction reached the monitors exactly
+ * once and the name indexes hold exactly the current account names. A failing round prints its seed, set
+ * {@code -Dstress.seed} to replay the same operation mix.
+ */
+public class LedgerStressTest {
+    static final String CREATED = "2020-01-01 10:00";
+    static final int THREADS = 16;
+    static final int OPERATIONS_PER_THREAD = 60;
+    static final int ACCOUNTS = 6;
+    static final double OPENING_BALANCE = 500;
+
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    IndexedRepository.TransactionsIndexedRepository transactionsRepository;
+    UserService userService;
+    AccountService accountService;
+    TransactionService transactionService;
+    List<User> owners = new ArrayList<>();
+    List<User> guests = new ArrayList<>();
+    List<Account> accounts = new ArrayList<>();
+    Queue<Transaction> accepted = new ConcurrentLinkedQueue<>();
+    Map<String, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+
+    @RepeatedTest(5)
+    void ledger_invariants_hold_under_contention() throws Exception {
+        // Given
+        long seed = Long.getLong("stress.seed", System.nanoTime());
+        createBank();
+
+        // When
+        runConcurrently(seed);
+
+        // Then
+        String round = "seed " + seed;
+        List<Transaction> stored = transactionsRepository.all().collect(Collectors.toList());
+        Map<String, Double> balances = new HashMap<>();
+        for (Transaction transaction : stored) {
+            double balance = balances.merge(TransactionImpl.accountIdOf(transaction), transaction.getAmount(), Double::sum);
+            assertThat(round + " overdrawn by " + transaction, balance, is(greaterThanOrEqualTo(0D)));
+        }
+        assertThat(round, ids(stored), is(ids(accepted)));
+        assertThat(round, stored.size(), is(accepted.size()));
+        for (Account account : accounts) {
+            double ledger = accepted.stream()
+                    .filter(transaction -> TransactionImpl.accountIdOf(transaction).equals(account.getId()))
+                    .mapToDouble(Transaction::getAmount).sum();
+            double sum = transactionService.sum(CREATED, account.getOwner().getId(), account.getId());
+            assertThat(round, sum, is(closeTo(ledger, 0.0001)));
+            assertThat(round, sum, is(greaterThanOrEqualTo(0D)));
+        }
+        assertThat(round, deliveries.keySet(), is(ids(stored)));
+        assertThat(round, deliveries.values().stream().filter(count -> count.get() != 1).count(), is(0L));
+        assertNameIndexesMatchAccounts(round);
+    }
+
+    /**
+     * Every account is listed once under its current name and exactly the current names are taken, a name given up by
+     * a rename, successful or not, can be used again.
+     */
+    private void assertNameIndexesMatchAccounts(String round) throws UseException {
+        Map<String, String> currentNames = accountsRepository.all()
+                .collect(Collectors.toMap(Account::getName, Account::getId));
+        assertThat(round, currentNames.size(), is(ACCOUNTS));
+        List<Account> listed = accountService.findAccountsAfter(null, null).collect(Collectors.toList());
+        assertThat(round, listed.stream().map(Account::getId).collect(Collectors.toList()),
+                containsInAnyOrder(currentNames.values().toArray()));
+        assertThat(round, listed.stream().map(Account::getName).collect(Collectors.toList()),
+                contains(new TreeSet<>(currentNames.keySet()).toArray()));
+        for (int n = 0; n < ACCOUNTS * 2; n++) {
+            String name = "Account " + n;
+            try {
+                accountService.createAccount(owners.get(0).getId(), name);
+                assertThat(round + " " + name + " was free although taken", currentNames, not(hasKey(name)));
+            } catch (UseException e) {
+                assertThat(round, e.getUserExceptionType(), is(UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE));
+                assertThat(round + " " + name + " was leaked", currentNames, hasKey(name));
+            }
+        }
+    }
+
+    private void createBank() throws UseException {
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        transactionsRepository = new IndexedRepository.TransactionsIndexedRepository();
+        userService = new UserServiceImpl(usersRepository);
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        transactionService.addMonitor(transaction -> deliveries.computeIfAbsent(transaction.getId(), id -> new AtomicInteger()).incrementAndGet());
+        for (int n = 0; n < ACCOUNTS; n++) {
+            User owner = userService.createUser("Owner " + n, "19800101-" + n);
+            owners.add(owner);
+            guests.add(userService.createUser("Guest " + n, "19900101-" + n));
+            Account account = accountService.createAccount(owner.getId(), "Account " + n);
+            accounts.add(account);
+            accepted.add(transactionService.createTransaction(CREATED, owner.getId(), account.getId(), OPENING_BALANCE));
+        }
+        // Seeds the name index so that renames have to keep it up to date
+        accountService.findAccountsAfter(null, null).count();
+    }
+
+    private void runConcurrently(long seed) throws InterruptedException, ExecutionException {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                SplittableRandom random = new SplittableRandom(seed + thread);
+                workers.add(executorService.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < OPERATIONS_PER_THREAD; n++) {
+                        randomOperation(random);
+                        if (random.nextInt(4) == 0)
+                            Thread.yield();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void randomOperation(SplittableRandom random) throws UseException {
+        int n = random.nextInt(ACCOUNTS);
+        Account account = accounts.get(n);
+        User owner = owners.get(n);
+        int operation = random.nextInt(100);
+        if (operation < 35) {
+            accept(transactionService.tryCreateTransaction(CREATED, owner.getId(), account.getId(), -1 - random.nextInt(200)));
+        } else if (operation < 50) {
+            accept(transactionService.tryCreateTransaction(CREATED, owner.getId(), account.getId(), 1 + random.nextInt(100)));
+        } else if (operation < 75) {
+            int to = random.nextInt(ACCOUNTS);
+            double amount = 1 + random.nextInt(150);
+            if (accept(transactionService.tryCreateTransaction(CREATED, owner.getId(), account.getId(), -amount)))
+                accept(transactionService.tryCreateTransaction(CREATED, owners.get(to).getId(), accounts.get(to).getId(), amount));
+        } else if (operation < 85) {
+            // Guests come and go, their withdrawals are rejected while they are not users of the account
+            User guest = guests.get(random.nextInt(ACCOUNTS));
+            TransactionResult result = transactionService.tryCreateTransaction(CREATED, guest.getId(), account.getId(), -1 - random.nextInt(50));
+            if (!accept(result))
+                assertThat(result.getRejection(), isOneOf(UseExceptionType.NOT_ALLOWED, UseExceptionType.NOT_FUNDED));
+            changeGuest(account, owner, guest);
+        } else {
+            renameAccount(account, owner, "Account " + random.nextInt(ACCOUNTS * 2));
+        }
+    }
+
+    private boolean accept(TransactionResult result) {
+        if (result.isSuccess())
+            accepted.add(result.getTransaction());
+        return result.isSuccess();
+    }
+
+    private void changeGuest(Account account, User owner, User guest) {
+        try {
+            if (AccountImpl.hasUser(account, guest.getId()))
+                accountService.removeUserFromAccount(owner.getId(), account.getId(), guest.getId());
+            else
+                accountService.addUserToAccount(owner.getId(), account.getId(), guest.getId());
+        } catch (UseException e) {
+            // Another thread changed the guest first
+            assertThat(e.getUserExceptionType(), isOneOf(UseExceptionType.USER_ALREADY_ASSIGNED_TO_THIS_ACCOUNT,
+                    UseExceptionType.USER_NOT_ASSIGNED_TO_THIS_ACCOUNT, UseExceptionType.CANNOT_ADD_OWNER_AS_USER));
+        }
+    }
+
+    private void renameAccount(Account account, User owner, String name) {
+        try {
+            accountService.changeAccount(owner.getId(), account.getId(), changeAccount -> setName(changeAccount, name));
+        } catch (UseException e) {
+            assertThat(e.getUserExceptionType(), is(UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE));
+        }
+    }
+
+    @SneakyThrows
+    private static void setName(AccountService.ChangeAccount changeAccount, String name) {
+        changeAccount.setName(name);
+    }
+
+    private static Set<String> ids(Collection<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getId).collect(Collectors.toSet());
+    }
+}
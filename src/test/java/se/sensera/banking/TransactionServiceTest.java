@@ -15,7 +15,9 @@ import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -142,6 +144,78 @@ public class TransactionServiceTest {
         assertThat(userException.getActivity(), is(Activity.CREATE_TRANSACTION));
     }
 
+    @Test
+    void try_create_transaction_success() {
+        // Given
+        String created = "2020-01-01 10:34";
+        when(transactionsRepository.save(anyObject())).then(invocation -> invocation.getArguments()[0]);
+
+        // When
+        TransactionResult result = transactionService.tryCreateTransaction(created, user.getId(), account.getId(), -100);
+
+        // Then
+        assertThat(result.isSuccess(), is(true));
+        assertThat(result.getTransaction().getAmount(), is(-100D));
+        verify(transactionsRepository).save(result.getTransaction());
+    }
+
+    @Test
+    void try_create_transaction_returns_rejection_when_not_funded() {
+        // Given
+        String created = "2020-01-01 10:34";
+
+        // When
+        TransactionResult result = transactionService.tryCreateTransaction(created, user.getId(), account.getId(), -300);
+
+        // Then
+        assertThat(result.isSuccess(), is(false));
+        assertThat(result.getRejection(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(result.getTransaction(), is(nullValue()));
+        verify(transactionsRepository, never()).save(anyObject());
+    }
+
+    @Test
+    void withdrawal_not_saved_when_funds_cannot_be_counted() {
+        // Given
+        String created = "2020-01-01 10:34";
+        when(transactionsRepository.all()).thenThrow(new IllegalStateException("Repository unavailable"));
+
+        // When
+        assertThrows(IllegalStateException.class, () -> transactionService.tryCreateTransaction(created, user.getId(), account.getId(), -100));
+
+        // Then
+        verify(transactionsRepository, never()).save(anyObject());
+    }
+
+    @Test
+    void rejection_thrown_without_stack_trace() {
+        // Given
+        String created = "2020-01-01 10:34";
+
+        // When
+        UseException userException = assertThrows(UseException.class, () -> {
+            transactionService.createTransaction(created, otherUser.getId(), account.getId(), 100);
+        });
+
+        // Then
+        assertThat(userException.getStackTrace().length, is(0));
+        assertThat(userException.getMessage(), is("CREATE_TRANSACTION failed because NOT_ALLOWED"));
+    }
+
+    @Test
+    void use_exception_keeps_stack_trace_and_suppressed_exceptions() {
+        // Given
+        UseException userException = new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_FUNDED);
+
+        // When
+        userException.addSuppressed(new IllegalStateException("Close failed"));
+
+        // Then
+        assertThat(userException.getSuppressed().length, is(1));
+        assertThat(userException.getStackTrace().length, is(not(0)));
+        assertThat(userException.getMessage(), is("CREATE_TRANSACTION failed because NOT_FUNDED"));
+    }
+
     private Account createAccount(User owner, String name, boolean active, User... users) {
         Account account = mock(Account.class);
         String accountId = UUID.randomUUID().toString();
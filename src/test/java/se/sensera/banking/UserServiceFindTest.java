@@ -3,10 +3,13 @@ package se.sensera.banking;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import se.sensera.banking.impl.UserServiceImpl;
+import se.sensera.banking.utils.Page;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -175,6 +178,46 @@ public class UserServiceFindTest {
         ));
     }
 
+    @Test
+    void find_users_sorted_by_name_second_page_success() {
+        // Given
+        when(per_andersson.isActive()).thenReturn(false);
+
+        // When
+        Stream<User> rs = userService.find("", 1, 2, UserService.SortOrder.Name);
+
+        // Then
+        assertThat(rs.collect(Collectors.toList()), contains(bruno_pettersson, jason_mars));
+    }
+
+    @Test
+    void find_page_sorted_by_personal_id_counts_all_hits_success() {
+        // When
+        Page<User> page = userService.findPage("gunnarsson", 0, 2, UserService.SortOrder.PersonalId);
+
+        // Then
+        assertThat(page.getItems(), contains(lisa_gunnarsson, arne_gunnarsson));
+        assertThat(page.getTotalHits(), is(3L));
+    }
+
+    @Test
+    void find_pages_of_users_with_same_name_do_not_overlap_success() {
+        // Given
+        List<User> namesakes = IntStream.range(0, 5)
+                .mapToObj(n -> createUser("Anna Berg", "19900101-000" + n, true))
+                .collect(Collectors.toList());
+        when(usersRepository.all()).thenAnswer(invocation -> namesakes.stream());
+
+        // When
+        List<User> firstPage = userService.find("", 0, 2, UserService.SortOrder.Name).collect(Collectors.toList());
+        List<User> secondPage = userService.find("", 1, 2, UserService.SortOrder.Name).collect(Collectors.toList());
+        List<User> lastPage = userService.find("", 2, 2, UserService.SortOrder.Name).collect(Collectors.toList());
+
+        // Then
+        List<User> pages = Stream.of(firstPage, secondPage, lastPage).flatMap(List::stream).collect(Collectors.toList());
+        assertThat(pages, is(namesakes.stream().sorted(Comparator.comparing(User::getId)).collect(Collectors.toList())));
+    }
+
     private User createUser(String name, String pid, boolean active) {
         User user = mock(User.class);
         String userId = UUID.randomUUID().toString();
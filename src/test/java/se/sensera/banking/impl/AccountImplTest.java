@@ -0,0 +1,72 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.User;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class AccountImplTest {
+
+    User owner = new UserImpl("owner", "Arne Gunnarsson", "20011010-1234", true);
+
+    @Test
+    void membership_follows_add_and_remove() {
+        // Given
+        AccountImpl account = new AccountImpl("account", owner, "default", true);
+        User lisa = new UserImpl("lisa", "Lisa Gunnarsson", "20011010-0234", true);
+
+        // When
+        account.addUser(lisa);
+
+        // Then
+        assertThat(account.hasUser("lisa"), is(true));
+        assertThat(AccountImpl.hasUser(account, "owner"), is(false));
+        account.removeUser(new UserImpl("lisa", "Lisa Gunnarsson", "20011010-0234", true));
+        assertThat(account.hasUser("lisa"), is(false));
+    }
+
+    @Test
+    void users_stream_is_a_snapshot() {
+        // Given
+        AccountImpl account = new AccountImpl("account", owner, "default", true);
+        account.addUser(new UserImpl("lisa", "Lisa Gunnarsson", "20011010-0234", true));
+        Stream<User> users = account.getUsers();
+
+        // When
+        account.addUser(new UserImpl("per", "Per Andersson", "20011010-4234", true));
+
+        // Then
+        assertThat(users.map(User::getId).collect(Collectors.toList()), contains("lisa"));
+    }
+
+    @Test
+    void concurrent_adds_are_not_lost() throws InterruptedException {
+        // Given
+        AccountImpl account = new AccountImpl("account", owner, "default", true);
+        List<User> users = IntStream.range(0, 200)
+                .mapToObj(n -> (User) new UserImpl("user" + n, "User " + n, "19800101-" + n, true))
+                .collect(Collectors.toList());
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+        // When
+        users.forEach(user -> executorService.execute(() -> {
+            account.addUser(user);
+            account.getUsers().count();
+        }));
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(account.getUsers().count(), is(200L));
+        users.forEach(user -> assertThat(account.hasUser(user.getId()), is(true)));
+    }
+}
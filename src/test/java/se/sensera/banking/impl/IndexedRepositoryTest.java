@@ -0,0 +1,129 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.User;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class IndexedRepositoryTest {
+
+    @Test
+    void delete_leaves_other_entities_success() {
+        // Given
+        IndexedRepository.UsersIndexedRepository repository = new IndexedRepository.UsersIndexedRepository();
+        List<User> users = createUsers(5);
+        users.forEach(repository::save);
+
+        // When
+        repository.delete(users.get(1));
+        repository.delete(users.get(3));
+
+        // Then
+        assertThat(repository.all().collect(Collectors.toList()), contains(users.get(0), users.get(2), users.get(4)));
+        assertThat(repository.getEntityById("1").isPresent(), is(false));
+        assertThat(repository.getEntityById("4").get(), is(users.get(4)));
+        assertThat(repository.size(), is(3));
+        assertThat(repository.tombstoneCount(), is(2));
+    }
+
+    @Test
+    void compact_drops_tombstones_and_keeps_index_success() {
+        // Given
+        IndexedRepository<User> repository = new IndexedRepository<>(1_000_000);
+        List<User> users = createUsers(100);
+        users.forEach(repository::save);
+        users.stream().filter(user -> Integer.parseInt(user.getId()) % 2 == 0).forEach(repository::delete);
+
+        // When
+        repository.compact();
+
+        // Then
+        assertThat(repository.tombstoneCount(), is(0));
+        assertThat(repository.all().count(), is(50L));
+        users.stream()
+                .filter(user -> Integer.parseInt(user.getId()) % 2 == 1)
+                .forEach(user -> assertThat(repository.getEntityById(user.getId()).get(), is(user)));
+        User replaced = new UserImpl("99", "Replaced", "990101-9999", true);
+        repository.save(replaced);
+        assertThat(repository.getEntityById("99").get(), is(replaced));
+        assertThat(repository.all().count(), is(50L));
+    }
+
+    @Test
+    void writes_between_compaction_batches_are_kept() {
+        // Given
+        IndexedRepository<User> repository = new IndexedRepository<>(25);
+        List<User> users = createUsers(40);
+        users.forEach(repository::save);
+        users.stream().filter(user -> Integer.parseInt(user.getId()) % 2 == 0).forEach(repository::delete);
+        repository.compactStep();
+
+        // When
+        repository.delete(users.get(1));
+        repository.delete(users.get(39));
+        User replaced = new UserImpl("21", "Replaced", "990101-9999", true);
+        repository.save(replaced);
+        User added = new UserImpl("40", "Added", "990101-8888", true);
+        repository.save(added);
+        List<User> duringCompaction = repository.all().collect(Collectors.toList());
+        while (!repository.compactStep()) {
+            assertThat(repository.getEntityById("3").get(), is(users.get(3)));
+        }
+
+        // Then
+        List<String> expected = IntStream.range(0, 41)
+                .filter(n -> n % 2 == 1 && n != 1 && n != 39 || n == 40)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.toList());
+        assertThat(duringCompaction.stream().map(User::getId).collect(Collectors.toList()), is(expected));
+        assertThat(repository.all().map(User::getId).collect(Collectors.toList()), is(expected));
+        assertThat(repository.getEntityById("21").get(), is(replaced));
+        assertThat(repository.getEntityById("40").get(), is(added));
+        assertThat(repository.tombstoneCount(), is(1));
+        repository.compact();
+        assertThat(repository.tombstoneCount(), is(0));
+        assertThat(repository.all().map(User::getId).collect(Collectors.toList()), is(expected));
+    }
+
+    @Test
+    void background_compaction_after_batch_of_deletes_success() throws InterruptedException {
+        // Given
+        IndexedRepository<User> repository = new IndexedRepository<>(10);
+        List<User> users = createUsers(40);
+        users.forEach(repository::save);
+
+        // When
+        users.subList(0, 30).forEach(repository::delete);
+
+        // Then
+        for (int i = 0; i < 100 && repository.tombstoneCount() > 0; i++)
+            Thread.sleep(10);
+        assertThat(repository.tombstoneCount(), is(0));
+        assertThat(repository.all().collect(Collectors.toList()), is(users.subList(30, 40)));
+    }
+
+    @Test
+    void delete_in_repository_impl_removes_only_entity_success() {
+        // Given
+        RepositoryImpl.UsersRepositoryImpl repository = new RepositoryImpl.UsersRepositoryImpl();
+        List<User> users = createUsers(3);
+        users.forEach(repository::save);
+
+        // When
+        repository.delete(users.get(1));
+
+        // Then
+        assertThat(repository.all().collect(Collectors.toList()), contains(users.get(0), users.get(2)));
+    }
+
+    private static List<User> createUsers(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(n -> (User) new UserImpl(String.valueOf(n), "User " + n, "19800101-" + n, true))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,91 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.TransactionsRepository;
+import se.sensera.banking.UsersRepository;
+import se.sensera.banking.impl.storage.LsmRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RepositoryFactoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void default_backend_is_in_memory() throws IOException {
+        try (RepositoryFactory factory = new RepositoryFactory(new StorageConfiguration(new Properties()))) {
+            // When
+            UsersRepository usersRepository = factory.createUsersRepository();
+
+            // Then
+            assertThat(usersRepository, is(instanceOf(RepositoryImpl.UsersRepositoryImpl.class)));
+        }
+    }
+
+    @Test
+    void backend_chosen_per_repository() throws IOException {
+        // Given
+        Properties properties = new Properties();
+        properties.setProperty("banking.storage.backend", "indexed");
+        properties.setProperty("banking.storage.directory", directory.toString());
+        properties.setProperty("banking.storage.transactions.backend", "log-structured");
+        properties.setProperty("banking.storage.transactions.sync", "true");
+
+        try (RepositoryFactory factory = new RepositoryFactory(new StorageConfiguration(properties))) {
+            // When
+            UsersRepository usersRepository = factory.createUsersRepository();
+            AccountsRepository accountsRepository = factory.createAccountsRepository(usersRepository);
+            TransactionsRepository transactionsRepository = factory.createTransactionsRepository(usersRepository, accountsRepository);
+
+            // Then
+            assertThat(usersRepository, is(instanceOf(IndexedRepository.UsersIndexedRepository.class)));
+            assertThat(accountsRepository, is(instanceOf(IndexedRepository.AccountsIndexedRepository.class)));
+            assertThat(transactionsRepository, is(instanceOf(LsmRepository.TransactionsLsmRepository.class)));
+        }
+    }
+
+    @Test
+    void settings_fall_back_to_shared_keys() {
+        // Given
+        Properties properties = new Properties();
+        properties.setProperty("banking.storage.backend", "mmap");
+        properties.setProperty("banking.storage.directory", directory.toString());
+        properties.setProperty("banking.storage.memtable-size", "1024");
+        properties.setProperty("banking.storage.accounts.memtable-size", "2048");
+
+        // When
+        StorageConfiguration configuration = new StorageConfiguration(properties);
+        StorageConfiguration.RepositorySettings users = configuration.settingsFor(StorageConfiguration.USERS);
+        StorageConfiguration.RepositorySettings accounts = configuration.settingsFor(StorageConfiguration.ACCOUNTS);
+
+        // Then
+        assertThat(users.getBackend(), is(StorageConfiguration.Backend.MMAP));
+        assertThat(users.getDirectory(), is(directory.resolve("users")));
+        assertThat(users.getMemtableSize(), is(1024L));
+        assertThat(accounts.getMemtableSize(), is(2048L));
+    }
+
+    @Test
+    void unknown_backend_fails() {
+        // Given
+        Properties properties = new Properties();
+        properties.setProperty("banking.storage.backend", "tape");
+
+        // When
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () ->
+                new StorageConfiguration(properties).settingsFor(StorageConfiguration.USERS));
+
+        // Then
+        assertThat(exception.getMessage(), is("doesn't exist tape"));
+    }
+}
@@ -0,0 +1,82 @@
+package se.sensera.banking.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountsRepository;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+class TransactionImplTest {
+
+    UsersRepository usersRepository;
+    AccountsRepository accountsRepository;
+    User user;
+    Account account;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = mock(UsersRepository.class);
+        accountsRepository = mock(AccountsRepository.class);
+        user = mock(User.class);
+        account = mock(Account.class);
+        when(usersRepository.getEntityById("u1")).thenReturn(Optional.of(user));
+        when(accountsRepository.getEntityById("a1")).thenReturn(Optional.of(account));
+    }
+
+    @Test
+    void user_and_account_resolved_when_asked_success() {
+        // Given
+        TransactionImpl transaction = new TransactionImpl(UUID.randomUUID().toString(), new Date(), "u1", "a1", 100,
+                new EntityResolver(usersRepository, accountsRepository));
+        verify(usersRepository, never()).getEntityById("u1");
+
+        // When
+        User resolvedUser = transaction.getUser();
+        Account resolvedAccount = transaction.getAccount();
+
+        // Then
+        assertThat(resolvedUser, is(user));
+        assertThat(resolvedAccount, is(account));
+        assertThat(TransactionImpl.accountIdOf(transaction), is("a1"));
+    }
+
+    @Test
+    void changed_account_seen_through_existing_transaction() {
+        // Given
+        TransactionImpl transaction = new TransactionImpl(UUID.randomUUID().toString(), new Date(), "u1", "a1", 100,
+                new EntityResolver(usersRepository, accountsRepository));
+        transaction.getAccount();
+        Account inactivated = mock(Account.class);
+        when(accountsRepository.getEntityById("a1")).thenReturn(Optional.of(inactivated));
+
+        // When
+        Account resolvedAccount = transaction.getAccount();
+
+        // Then
+        assertThat(resolvedAccount, is(inactivated));
+    }
+
+    @Test
+    void unknown_user_failed() {
+        // Given
+        TransactionImpl transaction = new TransactionImpl(UUID.randomUUID().toString(), new Date(), "u2", "a1", 100,
+                new EntityResolver(usersRepository, accountsRepository));
+        when(usersRepository.getEntityById("u2")).thenReturn(Optional.empty());
+
+        // When
+        IllegalStateException exception = assertThrows(IllegalStateException.class, transaction::getUser);
+
+        // Then
+        assertThat(exception.getMessage(), is("Transaction refers to unknown user u2"));
+    }
+}
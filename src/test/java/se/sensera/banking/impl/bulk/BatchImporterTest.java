@@ -0,0 +1,117 @@
+package se.sensera.banking.impl.bulk;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.User;
+import se.sensera.banking.UserService;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchImporterTest {
+
+    @TempDir
+    Path directory;
+
+    IndexedRepository.UsersIndexedRepository usersRepository;
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    UserServiceImpl userService;
+    AccountServiceImpl accountService;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        userService = new UserServiceImpl(usersRepository);
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+    }
+
+    @Test
+    void users_imported_in_batches_with_rejections() throws IOException, UseException {
+        // Given
+        userService.createUser("Arne Gunnarsson", "20011010-1234");
+        List<String> lines = new ArrayList<>(List.of("# name;personal identification number", ""));
+        IntStream.range(0, 25).forEach(n -> lines.add("User " + n + ";19800101-" + n));
+        lines.add("Lisa Gunnarsson;20011010-1234");
+        lines.add("Per Andersson;19800101-3");
+        lines.add("no separator");
+        lines.add(";19800101-99");
+        Path file = Files.write(directory.resolve("users.csv"), lines);
+        List<Long> progress = new ArrayList<>();
+
+        // When
+        ImportReport report = userService.importUsers(file, 10, r -> progress.add(r.getImported()));
+
+        // Then
+        assertThat(report.getRecords(), is(29L));
+        assertThat(report.getImported(), is(25L));
+        assertThat(report.getRejected(), is(4L));
+        assertThat(report.getBatches(), is(3L));
+        assertThat(progress, contains(10L, 20L, 25L));
+        assertThat(report.getRejections().stream().map(ImportReport.Rejection::getReason).collect(Collectors.toList()),
+                contains("USER_PERSONAL_ID_NOT_UNIQUE", "USER_PERSONAL_ID_NOT_UNIQUE", BatchImporter.MALFORMED, BatchImporter.MALFORMED));
+        assertThat(report.getRejections().get(0).getLine(), is(28L));
+        assertThat(usersRepository.size(), is(26));
+        assertThat(userService.find("user 1", null, null, UserService.SortOrder.None).count(), is(11L));
+    }
+
+    @Test
+    void accounts_imported_for_existing_owners() throws IOException, UseException {
+        // Given
+        User arne = userService.createUser("Arne Gunnarsson", "20011010-1234");
+        accountService.createAccount(arne.getId(), "default");
+        Path file = Files.write(directory.resolve("accounts.csv"), List.of(
+                arne.getId() + ";savings",
+                arne.getId() + ";Default",
+                "unknown;travel",
+                arne.getId() + ";travel",
+                arne.getId() + ";SAVINGS"));
+
+        // When
+        ImportReport report = accountService.importAccounts(file, BatchImporter.DEFAULT_BATCH_SIZE, r -> {});
+
+        // Then
+        assertThat(report.getImported(), is(2L));
+        assertThat(report.getRejections().stream().map(ImportReport.Rejection::getReason).collect(Collectors.toList()),
+                contains(UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE.name(), UseExceptionType.USER_NOT_FOUND.name(),
+                        UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE.name()));
+        assertThat(accountService.findAccounts("", arne.getId(), null, null, AccountService.SortOrder.None).count(), is(3L));
+        assertThat(accountService.findAccountsAfter("default", null).map(Account::getName).collect(Collectors.toList()),
+                contains("savings", "travel"));
+    }
+
+    @Test
+    void names_reserved_by_aborted_import_are_released() throws IOException, UseException {
+        // Given
+        User arne = userService.createUser("Arne Gunnarsson", "20011010-1234");
+        List<String> lines = new ArrayList<>(List.of(arne.getId() + ";savings"));
+        IntStream.range(0, 300).forEach(n -> lines.add("#" + "-".repeat(100)));
+        Path file = Files.write(directory.resolve("accounts.csv"), lines);
+        Files.write(file, new byte[]{(byte) 0xC3, (byte) 0x28, '\n'}, StandardOpenOption.APPEND);
+
+        // When
+        assertThrows(IOException.class, () -> accountService.importAccounts(file, BatchImporter.DEFAULT_BATCH_SIZE, r -> {}));
+
+        // Then
+        assertThat(accountsRepository.size(), is(0));
+        assertThat(accountService.createAccount(arne.getId(), "savings").getName(), is("savings"));
+    }
+}
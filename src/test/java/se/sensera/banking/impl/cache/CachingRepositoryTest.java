@@ -0,0 +1,122 @@
+package se.sensera.banking.impl.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.User;
+import se.sensera.banking.UsersRepository;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+class CachingRepositoryTest {
+
+    UsersRepository usersRepository;
+    CachingRepository.UsersCachingRepository cachingRepository;
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        usersRepository = mock(UsersRepository.class);
+        cachingRepository = new CachingRepository.UsersCachingRepository(usersRepository, 100);
+
+        when(usersRepository.getEntityById(anyString())).thenReturn(Optional.empty());
+        user = createUser();
+    }
+
+    @Test
+    void get_entity_served_from_cache_success() {
+        // Given
+        cachingRepository.getEntityById(user.getId());
+
+        // When
+        Optional<User> cached = cachingRepository.getEntityById(user.getId());
+
+        // Then
+        assertThat(cached.get(), is(user));
+        verify(usersRepository, times(1)).getEntityById(user.getId());
+        assertThat(cachingRepository.stats().getHitCount(), is(1L));
+        assertThat(cachingRepository.stats().getMissCount(), is(1L));
+    }
+
+    @Test
+    void missing_entity_is_not_cached() {
+        // Given
+        String unknownId = UUID.randomUUID().toString();
+        cachingRepository.getEntityById(unknownId);
+
+        // When
+        Optional<User> result = cachingRepository.getEntityById(unknownId);
+
+        // Then
+        assertThat(result.isPresent(), is(false));
+        verify(usersRepository, times(2)).getEntityById(unknownId);
+    }
+
+    @Test
+    void save_invalidates_cached_entity() {
+        // Given
+        cachingRepository.getEntityById(user.getId());
+        String userId = user.getId();
+        User changedUser = mock(User.class);
+        when(changedUser.getId()).thenReturn(userId);
+        when(usersRepository.save(changedUser)).thenReturn(changedUser);
+
+        // When
+        cachingRepository.save(changedUser);
+        when(usersRepository.getEntityById(eq(userId))).thenReturn(Optional.of(changedUser));
+
+        // Then
+        assertThat(cachingRepository.getEntityById(user.getId()).get(), is(changedUser));
+        verify(usersRepository).save(changedUser);
+    }
+
+    @Test
+    void delete_invalidates_cached_entity() {
+        // Given
+        cachingRepository.getEntityById(user.getId());
+        String userId = user.getId();
+
+        // When
+        cachingRepository.delete(user);
+        when(usersRepository.getEntityById(eq(userId))).thenReturn(Optional.empty());
+
+        // Then
+        assertThat(cachingRepository.getEntityById(user.getId()).isPresent(), is(false));
+        verify(usersRepository).delete(user);
+    }
+
+    @Test
+    void frequently_used_entries_survive_a_scan() {
+        // Given
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        IntStream.range(0, 100).forEach(n -> cache.put(n, "hot " + n));
+        IntStream.range(0, 5).forEach(round -> IntStream.range(0, 50).forEach(cache::getIfPresent));
+
+        // When
+        IntStream.range(1000, 11000).forEach(n -> {
+            cache.getIfPresent(n);
+            cache.put(n, "cold " + n);
+        });
+
+        // Then
+        assertThat(cache.size(), is(lessThanOrEqualTo(100L)));
+        long hotEntriesLeft = IntStream.range(0, 50).filter(n -> cache.getIfPresent(n) != null).count();
+        assertThat(hotEntriesLeft, is(50L));
+        assertThat(cache.stats().getEvictionCount(), is(greaterThan(0L)));
+    }
+
+    private User createUser() {
+        User user = mock(User.class);
+        String userId = UUID.randomUUID().toString();
+        when(user.getId()).thenReturn(userId);
+        when(usersRepository.getEntityById(eq(userId))).thenReturn(Optional.of(user));
+        return user;
+    }
+}
@@ -0,0 +1,276 @@
+package se.sensera.banking.impl.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.*;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountImpl;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RingBufferTransactionServiceTest {
+    static final String CREATED = "2020-01-01 10:00";
+
+    IndexedRepository.UsersIndexedRepository usersRepository;
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    IndexedRepository.TransactionsIndexedRepository transactionsRepository;
+    RingBufferTransactionService transactionService;
+    User user;
+    User otherUser;
+    Account account;
+
+    @BeforeEach
+    void setUp() throws UseException {
+        usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        transactionsRepository = new IndexedRepository.TransactionsIndexedRepository();
+        UserServiceImpl userService = new UserServiceImpl(usersRepository);
+        user = userService.createUser("Arne Gunnarsson", "20011010-1234");
+        otherUser = userService.createUser("Lisa Bok", "19920101-4321");
+        account = new AccountServiceImpl(usersRepository, accountsRepository).createAccount(user.getId(), "default");
+        new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository)
+                .createTransaction(CREATED, user.getId(), account.getId(), 500);
+        transactionService = new RingBufferTransactionService(usersRepository, accountsRepository, transactionsRepository, 64);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionService.close();
+    }
+
+    @Test
+    void create_transaction_journaled_before_return() throws UseException {
+        // When
+        Transaction transaction = transactionService.createTransaction(CREATED, user.getId(), account.getId(), -200);
+
+        // Then
+        assertThat(transactionsRepository.getEntityById(transaction.getId()).get(), is(transaction));
+        assertThat(transaction.getAccount(), is(account));
+        assertThat(transactionService.sum(CREATED, user.getId(), account.getId()), is(300D));
+    }
+
+    @Test
+    void withdrawal_over_seeded_balance_is_not_funded() {
+        // When
+        TransactionResult result = transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), -501);
+        UseException exception = assertThrows(UseException.class,
+                () -> transactionService.createTransaction(CREATED, user.getId(), account.getId(), -501));
+
+        // Then
+        assertThat(result.getRejection(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(exception.getUserExceptionType(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(transactionsRepository.all().count(), is(1L));
+    }
+
+    @Test
+    void requests_are_validated_like_the_direct_engine() {
+        // When
+        TransactionResult unknownUser = transactionService.tryCreateTransaction(CREATED, "unknown", account.getId(), 10);
+        TransactionResult unknownAccount = transactionService.tryCreateTransaction(CREATED, user.getId(), "unknown", 10);
+        TransactionResult notAllowed = transactionService.tryCreateTransaction(CREATED, otherUser.getId(), account.getId(), 10);
+
+        // Then
+        assertThat(unknownUser.getRejection(), is(UseExceptionType.USER_NOT_FOUND));
+        assertThat(unknownAccount.getRejection(), is(UseExceptionType.ACCOUNT_NOT_FOUND));
+        assertThat(notAllowed.getRejection(), is(UseExceptionType.NOT_ALLOWED));
+    }
+
+    @Test
+    void concurrent_withdrawals_never_overdraw_and_reach_monitors_in_order() throws Exception {
+        // Given
+        List<Transaction> delivered = new CopyOnWriteArrayList<>();
+        transactionService.addMonitor(delivered::add);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<Long>> workers = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++)
+            workers.add(executorService.submit(() -> {
+                long accepted = 0;
+                for (int n = 0; n < 20; n++)
+                    if (transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), -10).isSuccess())
+                        accepted++;
+                return accepted;
+            }));
+        long accepted = 0;
+        for (Future<Long> worker : workers)
+            accepted += worker.get(30, TimeUnit.SECONDS);
+        executorService.shutdown();
+        transactionService.close();
+
+        // Then
+        assertThat(accepted, is(50L));
+        assertThat(transactionService.sum(CREATED, user.getId(), account.getId()), is(0D));
+        List<String> stored = transactionsRepository.all().skip(1).map(Transaction::getId).collect(Collectors.toList());
+        assertThat(delivered.stream().map(Transaction::getId).collect(Collectors.toList()), is(stored));
+    }
+
+    @Test
+    void submitted_requests_complete_in_order_past_the_ring_size() {
+        // When
+        List<CompletableFuture<TransactionResult>> results = new ArrayList<>();
+        for (int n = 0; n < 1000; n++)
+            results.add(transactionService.submitTransaction(CREATED, user.getId(), account.getId(), 1));
+        TransactionResult last = results.get(results.size() - 1).join();
+
+        // Then
+        assertThat(last.isSuccess(), is(true));
+        assertThat(results.stream().allMatch(CompletableFuture::isDone), is(true));
+        assertThat(transactionsRepository.all().count(), is(1001L));
+    }
+
+    @Test
+    void malformed_created_fails_only_its_own_request() {
+        // When
+        CompletableFuture<TransactionResult> malformed = transactionService.submitTransaction("yesterday", user.getId(), account.getId(), 1);
+        TransactionResult next = transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), 1);
+
+        // Then
+        assertThrows(CompletionException.class, malformed::join);
+        assertThat(next.isSuccess(), is(true));
+    }
+
+    @Test
+    void failed_save_stops_the_engine() {
+        // Given
+        transactionService.close();
+        IndexedRepository.TransactionsIndexedRepository failingRepository = new IndexedRepository.TransactionsIndexedRepository() {
+            @Override
+            public void saveAll(Collection<Transaction> entities) {
+                throw new IllegalStateException("Disk full");
+            }
+        };
+        transactionService = new RingBufferTransactionService(usersRepository, accountsRepository, failingRepository, 64);
+
+        // When
+        IllegalStateException failed = assertThrows(IllegalStateException.class,
+                () -> transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), 100));
+        IllegalStateException refused = assertThrows(IllegalStateException.class,
+                () -> transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), 100));
+
+        // Then
+        assertThat(failed.getMessage(), is("Disk full"));
+        assertThat(refused.getCause(), is(sameInstance(failed)));
+        assertThat(failingRepository.all().count(), is(0L));
+    }
+
+    @Test
+    void user_added_after_start_may_use_the_account() throws UseException {
+        // Given
+        transactionService.createTransaction(CREATED, user.getId(), account.getId(), 1);
+        AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+
+        // When
+        TransactionResult before = transactionService.tryCreateTransaction(CREATED, otherUser.getId(), account.getId(), 1);
+        accountService.addUserToAccount(user.getId(), account.getId(), otherUser.getId());
+        TransactionResult after = transactionService.tryCreateTransaction(CREATED, otherUser.getId(), account.getId(), 1);
+
+        // Then
+        assertThat(before.getRejection(), is(UseExceptionType.NOT_ALLOWED));
+        assertThat(after.isSuccess(), is(true));
+    }
+
+    @Test
+    void user_removed_after_start_is_refused_by_a_copying_repository() throws UseException {
+        // Given
+        transactionService.close();
+        IndexedRepository.AccountsIndexedRepository copyingRepository = new IndexedRepository.AccountsIndexedRepository() {
+            @Override
+            public Optional<Account> getEntityById(String id) {
+                return super.getEntityById(id).map(stored -> {
+                    AccountImpl copy = new AccountImpl(stored.getId(), stored.getOwner(), stored.getName(), stored.isActive());
+                    stored.getUsers().forEach(copy::addUser);
+                    return copy;
+                });
+            }
+        };
+        AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, copyingRepository);
+        Account copied = accountService.createAccount(user.getId(), "copied");
+        accountService.addUserToAccount(user.getId(), copied.getId(), otherUser.getId());
+        transactionService = new RingBufferTransactionService(usersRepository, copyingRepository, transactionsRepository, 64);
+
+        // When
+        TransactionResult before = transactionService.tryCreateTransaction(CREATED, otherUser.getId(), copied.getId(), 1);
+        accountService.removeUserFromAccount(user.getId(), copied.getId(), otherUser.getId());
+        TransactionResult after = transactionService.tryCreateTransaction(CREATED, otherUser.getId(), copied.getId(), 1);
+
+        // Then
+        assertThat(before.isSuccess(), is(true));
+        assertThat(after.getRejection(), is(UseExceptionType.NOT_ALLOWED));
+    }
+
+    @Test
+    void back_dated_withdrawal_only_sees_funds_created_before_it() throws UseException {
+        // Given
+        transactionService.createTransaction("2020-01-02 10:00", user.getId(), account.getId(), 1000);
+
+        // When
+        TransactionResult overdrawn = transactionService.tryCreateTransaction("2020-01-01 12:00", user.getId(), account.getId(), -800);
+        TransactionResult backDated = transactionService.tryCreateTransaction("2020-01-01 11:00", user.getId(), account.getId(), -400);
+        TransactionResult afterBackDated = transactionService.tryCreateTransaction("2020-01-01 11:00", user.getId(), account.getId(), -200);
+        TransactionResult current = transactionService.tryCreateTransaction("2020-01-02 10:00", user.getId(), account.getId(), -800);
+
+        // Then
+        assertThat(overdrawn.getRejection(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(backDated.isSuccess(), is(true));
+        assertThat(afterBackDated.getRejection(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(current.isSuccess(), is(true));
+        assertThat(transactionService.sum("2020-01-02 10:00", user.getId(), account.getId()), is(300D));
+    }
+
+    @Test
+    void failing_monitor_is_recorded_and_others_still_see_the_transaction() throws Exception {
+        // Given
+        IllegalStateException monitorFailure = new IllegalStateException("Monitor down");
+        CompletableFuture<Transaction> seen = new CompletableFuture<>();
+        transactionService.addMonitor(transaction -> {
+            throw monitorFailure;
+        });
+        transactionService.addMonitor(seen::complete);
+
+        // When
+        Transaction transaction = transactionService.createTransaction(CREATED, user.getId(), account.getId(), 1);
+
+        // Then
+        assertThat(seen.get(5, TimeUnit.SECONDS), is(transaction));
+        assertThat(transactionService.getMonitorFailure().get(), is(sameInstance(monitorFailure)));
+    }
+
+    @Test
+    void closed_engine_refuses_requests() {
+        // Given
+        transactionService.close();
+
+        // Then
+        assertThrows(IllegalStateException.class,
+                () -> transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), 1));
+    }
+
+    @Test
+    void engine_selected_by_name() {
+        // When
+        TransactionService transactionService = TransactionEngine.parse("ring-buffer")
+                .create(usersRepository, accountsRepository, transactionsRepository);
+
+        // Then
+        assertThat(transactionService, is(instanceOf(RingBufferTransactionService.class)));
+        assertThat(TransactionEngine.parse("DIRECT"), is(TransactionEngine.DIRECT));
+        assertThrows(IllegalArgumentException.class, () -> TransactionEngine.parse("unknown"));
+        ((RingBufferTransactionService) transactionService).close();
+    }
+}
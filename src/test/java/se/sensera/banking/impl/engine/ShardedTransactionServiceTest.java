@@ -0,0 +1,237 @@
+package se.sensera.banking.impl.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.*;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.RepositoryImpl;
+import se.sensera.banking.impl.TransactionImpl;
+import se.sensera.banking.impl.TransactionServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardedTransactionServiceTest {
+    static final String CREATED = "2020-01-01 10:00";
+    static final int SHARDS = 4;
+
+    IndexedRepository.UsersIndexedRepository usersRepository;
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    IndexedRepository.TransactionsIndexedRepository history;
+    AccountServiceImpl accountService;
+    ShardedTransactionService transactionService;
+    User user;
+    User otherUser;
+    List<Account> accounts = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws UseException {
+        usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        history = new IndexedRepository.TransactionsIndexedRepository();
+        UserServiceImpl userService = new UserServiceImpl(usersRepository);
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        user = userService.createUser("Arne Gunnarsson", "20011010-1234");
+        otherUser = userService.createUser("Lisa Bok", "19920101-4321");
+        TransactionServiceImpl direct = new TransactionServiceImpl(usersRepository, accountsRepository, history);
+        for (int n = 0; n < 12; n++) {
+            Account account = accountService.createAccount(user.getId(), "Account " + n);
+            accounts.add(account);
+            direct.createTransaction(CREATED, user.getId(), account.getId(), 100);
+        }
+        transactionService = new ShardedTransactionService(usersRepository, accountsRepository, history, SHARDS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionService.close();
+    }
+
+    @Test
+    void history_partitioned_by_account_hash() {
+        // When
+        Map<Integer, List<String>> accountIdsByShard = transactionService.allTransactions()
+                .map(TransactionImpl::accountIdOf)
+                .collect(Collectors.groupingBy(transactionService::shardIndex));
+
+        // Then
+        assertThat(transactionService.allTransactions().count(), is(12L));
+        assertThat(accountIdsByShard.size(), is(greaterThan(1)));
+        assertThat(transactionService.getShardCount(), is(SHARDS));
+    }
+
+    @Test
+    void transaction_runs_on_the_shard_of_its_account() throws UseException {
+        // Given
+        Account account = accounts.get(0);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        transactionService.addMonitor(transaction -> threads.add(Thread.currentThread().getName()));
+
+        // When
+        Transaction transaction = transactionService.createTransaction(CREATED, user.getId(), account.getId(), -40);
+
+        // Then
+        assertThat(threads, contains("transaction-shard-" + transactionService.shardIndex(account.getId())));
+        assertThat(transaction.getAccount(), is(account));
+        assertThat(transactionService.sum(CREATED, user.getId(), account.getId()), is(60D));
+        assertThat(history.getEntityById(transaction.getId()).get(), is(transaction));
+        assertThat(history.all().count(), is(13L));
+    }
+
+    @Test
+    void failed_history_save_leaves_the_shard_untouched() {
+        // Given
+        transactionService.close();
+        AtomicBoolean failing = new AtomicBoolean();
+        IndexedRepository.TransactionsIndexedRepository failingHistory = new IndexedRepository.TransactionsIndexedRepository() {
+            @Override
+            public Transaction save(Transaction transaction) {
+                if (failing.get())
+                    throw new IllegalStateException("Disk full");
+                return super.save(transaction);
+            }
+        };
+        failingHistory.saveAll(history.all().collect(Collectors.toList()));
+        transactionService = new ShardedTransactionService(usersRepository, accountsRepository, failingHistory, SHARDS);
+        failing.set(true);
+
+        // When
+        assertThrows(IllegalStateException.class,
+                () -> transactionService.tryCreateTransaction(CREATED, user.getId(), accounts.get(0).getId(), -40));
+
+        // Then
+        assertThat(transactionService.allTransactions().count(), is(12L));
+        assertThat(failingHistory.all().count(), is(12L));
+    }
+
+    @Test
+    void rejections_come_back_from_the_shard() {
+        // When
+        TransactionResult notFunded = transactionService.tryCreateTransaction(CREATED, user.getId(), accounts.get(0).getId(), -101);
+        UseException notAllowed = assertThrows(UseException.class,
+                () -> transactionService.sum(CREATED, otherUser.getId(), accounts.get(0).getId()));
+
+        // Then
+        assertThat(notFunded.getRejection(), is(UseExceptionType.NOT_FUNDED));
+        assertThat(notAllowed.getUserExceptionType(), is(UseExceptionType.NOT_ALLOWED));
+    }
+
+    @Test
+    void user_sum_merges_all_shards() throws UseException {
+        // Given
+        Account shared = accountService.createAccount(otherUser.getId(), "Shared");
+        accountService.addUserToAccount(otherUser.getId(), shared.getId(), user.getId());
+        transactionService.createTransaction(CREATED, otherUser.getId(), shared.getId(), 50);
+        transactionService.createTransaction("2020-01-02 10:00", user.getId(), accounts.get(1).getId(), 25);
+
+        // When
+        double sum = transactionService.sumForUser(CREATED, user.getId());
+        double otherSum = transactionService.sumForUser(CREATED, otherUser.getId());
+
+        // Then
+        assertThat(sum, is(1250D));
+        assertThat(otherSum, is(50D));
+        assertThrows(UseException.class, () -> transactionService.sumForUser(CREATED, "unknown"));
+    }
+
+    @Test
+    void concurrent_withdrawals_never_overdraw() throws Exception {
+        // Given
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<Long>> workers = IntStream.range(0, 8)
+                .mapToObj(thread -> executorService.submit(() -> {
+                    long accepted = 0;
+                    for (int n = 0; n < 30; n++)
+                        for (Account account : accounts.subList(0, 3))
+                            if (transactionService.tryCreateTransaction(CREATED, user.getId(), account.getId(), -10).isSuccess())
+                                accepted++;
+                    return accepted;
+                }))
+                .collect(Collectors.toList());
+        long accepted = 0;
+        for (Future<Long> worker : workers)
+            accepted += worker.get(30, TimeUnit.SECONDS);
+        executorService.shutdown();
+
+        // Then
+        assertThat(accepted, is(30L));
+        for (Account account : accounts.subList(0, 3))
+            assertThat(transactionService.sum(CREATED, user.getId(), account.getId()), is(0D));
+    }
+
+    @Test
+    void concurrent_writes_from_all_shards_reach_a_plain_history() throws Exception {
+        // Given
+        transactionService.close();
+        AtomicInteger writers = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        RepositoryImpl.TransactionsRepositoryImpl plainHistory = new RepositoryImpl.TransactionsRepositoryImpl() {
+            @Override
+            public Transaction save(Transaction transaction) {
+                if (writers.incrementAndGet() > 1)
+                    overlapped.set(true);
+                try {
+                    // Widens the window in which an unguarded write from another shard would overlap
+                    Thread.yield();
+                    return super.save(transaction);
+                } finally {
+                    writers.decrementAndGet();
+                }
+            }
+        };
+        plainHistory.saveAll(history.all().collect(Collectors.toList()));
+        transactionService = new ShardedTransactionService(usersRepository, accountsRepository, plainHistory, SHARDS);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<List<String>>> workers = IntStream.range(0, 8)
+                .mapToObj(thread -> executorService.submit(() -> {
+                    List<String> ids = new ArrayList<>();
+                    for (int n = 0; n < 100; n++)
+                        ids.add(transactionService.createTransaction(CREATED, user.getId(), accounts.get(n % accounts.size()).getId(), 1).getId());
+                    return ids;
+                }))
+                .collect(Collectors.toList());
+        Set<String> created = new HashSet<>();
+        for (Future<List<String>> worker : workers)
+            created.addAll(worker.get(30, TimeUnit.SECONDS));
+        executorService.shutdown();
+
+        // Then
+        Set<String> stored = plainHistory.all().map(Transaction::getId).collect(Collectors.toSet());
+        assertThat(overlapped.get(), is(false));
+        assertThat(created, hasSize(800));
+        assertThat(plainHistory.all().count(), is(812L));
+        assertThat(stored.containsAll(created), is(true));
+    }
+
+    @Test
+    void engine_selected_by_name() {
+        // When
+        TransactionService sharded = TransactionEngine.parse("sharded").create(usersRepository, accountsRepository, history);
+
+        // Then
+        assertThat(sharded, is(instanceOf(ShardedTransactionService.class)));
+        assertThat(((ShardedTransactionService) sharded).getShardCount(), is(Runtime.getRuntime().availableProcessors()));
+        ((ShardedTransactionService) sharded).close();
+    }
+}
@@ -0,0 +1,81 @@
+package se.sensera.banking.impl.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+class AccountNameIndexTest {
+
+    AccountServiceImpl accountService;
+    String arneId;
+
+    @BeforeEach
+    void setUp() throws UseException {
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        IndexedRepository.AccountsIndexedRepository accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        arneId = new UserServiceImpl(usersRepository).createUser("Arne Gunnarsson", "20011010-1234").getId();
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        for (String name : List.of("delta", "alpha", "echo", "charlie", "bravo"))
+            accountService.createAccount(arneId, name);
+    }
+
+    @Test
+    void pages_follow_name_order() throws UseException {
+        // When
+        List<String> secondPage = names(accountService.findAccounts("", null, 1, 2, AccountService.SortOrder.AccountName));
+
+        // Then
+        assertThat(names(accountService.findAccounts("", null, null, null, AccountService.SortOrder.AccountName)),
+                contains("alpha", "bravo", "charlie", "delta", "echo"));
+        assertThat(secondPage, contains("charlie", "delta"));
+    }
+
+    @Test
+    void keyset_page_starts_after_cursor() {
+        // Given
+        List<String> firstPage = names(accountService.findAccountsAfter(null, 2));
+
+        // When
+        List<String> nextPage = names(accountService.findAccountsAfter(firstPage.get(firstPage.size() - 1), 2));
+
+        // Then
+        assertThat(firstPage, contains("alpha", "bravo"));
+        assertThat(nextPage, contains("charlie", "delta"));
+        assertThat(names(accountService.findAccountsAfter("delta", 2)), contains("echo"));
+    }
+
+    @Test
+    void renamed_account_moves_in_order() throws UseException {
+        // Given
+        Account alpha = accountService.findAccountsAfter(null, 1).findFirst().orElseThrow();
+
+        // When
+        accountService.changeAccount(arneId, alpha.getId(), changeAccount -> {
+            try {
+                changeAccount.setName("foxtrot");
+            } catch (UseException e) {
+                throw new RuntimeException("Name change failed", e);
+            }
+        });
+
+        // Then
+        assertThat(names(accountService.findAccountsAfter(null, null)),
+                contains("bravo", "charlie", "delta", "echo", "foxtrot"));
+    }
+
+    private static List<String> names(Stream<Account> accounts) {
+        return accounts.map(Account::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,70 @@
+package se.sensera.banking.impl.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class AccountsByUserIndexTest {
+
+    IndexedRepository.UsersIndexedRepository usersRepository;
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    AccountServiceImpl accountService;
+    String arneId;
+    String lisaId;
+    Account arnesAccount;
+    Account lisasAccount;
+
+    @BeforeEach
+    void setUp() throws UseException {
+        usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        UserServiceImpl userService = new UserServiceImpl(usersRepository);
+        arneId = userService.createUser("Arne Gunnarsson", "20011010-1234").getId();
+        lisaId = userService.createUser("Lisa Gunnarsson", "20011010-0234").getId();
+        // Accounts created before the service exists have to be picked up when the index is seeded
+        arnesAccount = new AccountServiceImpl(usersRepository, accountsRepository).createAccount(arneId, "Arne default");
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        lisasAccount = accountService.createAccount(lisaId, "Lisa default");
+    }
+
+    @Test
+    void owned_and_member_accounts_found_for_user() throws UseException {
+        // Given
+        accountService.addUserToAccount(arneId, arnesAccount.getId(), lisaId);
+
+        // When
+        List<Account> accounts = accountService.findAccounts("", lisaId, null, null, AccountService.SortOrder.None)
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(accounts, containsInAnyOrder(arnesAccount, lisasAccount));
+    }
+
+    @Test
+    void index_follows_changes_after_seeding() throws UseException {
+        // Given
+        accountService.findAccounts("", arneId, null, null, AccountService.SortOrder.None);
+        accountService.addUserToAccount(arneId, arnesAccount.getId(), lisaId);
+        Account extra = accountService.createAccount(lisaId, "Lisa extra");
+
+        // When
+        accountService.removeUserFromAccount(arneId, arnesAccount.getId(), lisaId);
+
+        // Then
+        assertThat(accountService.findAccounts("", lisaId, null, null, AccountService.SortOrder.None).collect(Collectors.toList()),
+                containsInAnyOrder(lisasAccount, extra));
+        assertThat(accountService.findAccounts("", arneId, null, null, AccountService.SortOrder.None).collect(Collectors.toList()),
+                contains(arnesAccount));
+    }
+}
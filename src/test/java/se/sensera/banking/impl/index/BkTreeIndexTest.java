@@ -0,0 +1,71 @@
+package se.sensera.banking.impl.index;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.User;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.UserImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class BkTreeIndexTest {
+
+    User arne = new UserImpl("1", "Arne Gunnarsson", "20011010-1234", true);
+    User lisa = new UserImpl("2", "Lisa Gunnarsson", "20011010-0234", true);
+    User per = new UserImpl("3", "Per Andersson", "20011010-4234", true);
+    User jason = new UserImpl("4", "Jason Mars", "20011010-6234", true);
+
+    @Test
+    void distance_is_levenshtein() {
+        assertThat(BkTreeIndex.distance("kitten", "sitting"), is(3));
+        assertThat(BkTreeIndex.distance("", "abc"), is(3));
+        assertThat(BkTreeIndex.distance("gunnarsson", "gunnarsson"), is(0));
+    }
+
+    @Test
+    void misspelled_word_finds_users() {
+        // Given
+        BkTreeIndex<User> index = new BkTreeIndex<>(() -> Stream.of(arne, lisa, per, jason), User::getName);
+
+        // When
+        List<User> found = index.search("Gunarson", 2).collect(Collectors.toList());
+
+        // Then
+        assertThat(found, containsInAnyOrder(arne, lisa));
+        assertThat(index.search("Gunarson", 1).collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    void closest_match_ranked_first() {
+        // Given
+        BkTreeIndex<User> index = new BkTreeIndex<>(() -> Stream.of(arne, lisa, per, jason), User::getName);
+
+        // When
+        List<User> found = index.search("anna", 3).collect(Collectors.toList());
+
+        // Then
+        assertThat(found, contains(arne, lisa));
+    }
+
+    @Test
+    void find_similar_follows_renames() throws UseException {
+        // Given
+        UserServiceImpl userService = new UserServiceImpl(new IndexedRepository.UsersIndexedRepository());
+        String arneId = userService.createUser("Arne Gunnarsson", "20011010-1234").getId();
+        userService.createUser("Per Andersson", "20011010-4234");
+        userService.findSimilar("", 0, null);
+
+        // When
+        userService.changeUser(arneId, changeUser -> changeUser.setName("Arne Svensson"));
+
+        // Then
+        assertThat(userService.findSimilar("svenson", 1, 10).map(User::getId).collect(Collectors.toList()), contains(arneId));
+        assertThat(userService.findSimilar("gunnarson", 1, 10).collect(Collectors.toList()), is(empty()));
+    }
+}
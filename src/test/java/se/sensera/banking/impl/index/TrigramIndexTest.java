@@ -0,0 +1,65 @@
+package se.sensera.banking.impl.index;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.User;
+import se.sensera.banking.impl.UserImpl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TrigramIndexTest {
+
+    User arne = new UserImpl("1", "Arne Gunnarsson", "20011010-1234", true);
+    User lisa = new UserImpl("2", "Lisa Gunnarsson", "20011010-0234", true);
+    User per = new UserImpl("3", "Per Andersson", "20011010-4234", true);
+    User bo = new UserImpl("4", "Bo", "20011010-5234", true);
+
+    @Test
+    void substring_search_ignores_case() {
+        // Given
+        TrigramIndex<User> index = new TrigramIndex<>(() -> Stream.of(arne, lisa, per, bo), User::getName);
+
+        // When
+        List<User> found = index.search("GUNNAR").collect(Collectors.toList());
+
+        // Then
+        assertThat(found, containsInAnyOrder(arne, lisa));
+        assertThat(index.search("sson").collect(Collectors.toList()), containsInAnyOrder(arne, lisa, per));
+        assertThat(index.search("nnars").collect(Collectors.toList()), containsInAnyOrder(arne, lisa));
+        assertThat(index.search("xyz").collect(Collectors.toList()), is(empty()));
+    }
+
+    @Test
+    void short_search_strings_and_names_are_found() {
+        // Given
+        TrigramIndex<User> index = new TrigramIndex<>(() -> Stream.of(arne, lisa, per, bo), User::getName);
+
+        // When
+        List<User> found = index.search("bo").collect(Collectors.toList());
+
+        // Then
+        assertThat(found, contains(bo));
+        assertThat(index.search("").count(), is(4L));
+    }
+
+    @Test
+    void renamed_entity_found_by_new_name_only() {
+        // Given
+        TrigramIndex<User> index = new TrigramIndex<>(() -> Stream.of(arne, lisa), User::getName);
+        index.search("arne");
+
+        // When
+        arne.setName("Arne Andersson");
+        index.update(arne);
+
+        // Then
+        assertThat(index.search("gunnarsson").collect(Collectors.toList()), contains(lisa));
+        assertThat(index.search("andersson").collect(Collectors.toList()), contains(arne));
+        index.remove(arne);
+        assertThat(index.search("arne").collect(Collectors.toList()), is(empty()));
+    }
+}
@@ -0,0 +1,210 @@
+package se.sensera.banking.impl.index;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UniqueNameIndexTest {
+
+    @Test
+    void reserve_compares_normalized_names() {
+        // Given
+        UniqueNameIndex index = new UniqueNameIndex(() -> Stream.of("Savings", null));
+
+        // When
+        boolean reserved = index.reserve(" savings ");
+
+        // Then
+        assertThat(reserved, is(false));
+        assertThat(index.reserve("Travel"), is(true));
+        assertThat(index.contains("TRAVEL"), is(true));
+    }
+
+    @Test
+    void rename_releases_old_name() {
+        // Given
+        UniqueNameIndex index = new UniqueNameIndex(() -> Stream.of("Savings", "Travel"));
+
+        // When
+        boolean renamed = index.rename("Savings", "Holiday");
+
+        // Then
+        assertThat(renamed, is(true));
+        assertThat(index.contains("Savings"), is(false));
+        assertThat(index.rename("Holiday", "Travel"), is(false));
+        assertThat(index.contains("Holiday"), is(true));
+        assertThat(index.rename("Holiday", "holiday"), is(true));
+    }
+
+    @Test
+    void only_one_concurrent_reservation_wins() throws InterruptedException {
+        // Given
+        UniqueNameIndex index = new UniqueNameIndex(Stream::empty);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < 64; i++) {
+            executorService.execute(() -> {
+                try {
+                    start.await();
+                    if (index.reserve("Shared"))
+                        winners.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(winners.get(), is(1));
+    }
+
+    @Test
+    void concurrent_create_user_registers_personal_id_once() throws InterruptedException {
+        // Given
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        UserServiceImpl userService = new UserServiceImpl(usersRepository);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger rejected = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < 32; i++) {
+            int n = i;
+            executorService.execute(() -> {
+                try {
+                    start.await();
+                    userService.createUser("User " + n, "20011010-1234");
+                } catch (UseException e) {
+                    rejected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(usersRepository.size(), is(1));
+        assertThat(rejected.get(), is(31));
+    }
+
+    @Test
+    void changed_personal_id_is_released() throws UseException {
+        // Given
+        UserServiceImpl userService = new UserServiceImpl(new IndexedRepository.UsersIndexedRepository());
+        String arneId = userService.createUser("Arne Gunnarsson", "20011010-1234").getId();
+
+        // When
+        userService.changeUser(arneId, changeUser -> {
+            try {
+                changeUser.setPersonalIdentificationNumber("20011010-9999");
+            } catch (UseException e) {
+                throw new RuntimeException("Change failed", e);
+            }
+        });
+
+        // Then
+        assertThat(userService.createUser("Lisa Gunnarsson", "20011010-1234").getPersonalIdentificationNumber(), is("20011010-1234"));
+        UseException exception = assertThrows(UseException.class, () -> userService.createUser("Per Andersson", "20011010-9999"));
+        assertThat(exception.getUserExceptionType(), is(UseExceptionType.USER_PERSONAL_ID_NOT_UNIQUE));
+    }
+
+    @Test
+    void concurrent_renames_of_one_account_keep_only_the_final_name() throws Exception {
+        // Given
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, new IndexedRepository.AccountsIndexedRepository());
+        String arneId = new UserServiceImpl(usersRepository).createUser("Arne Gunnarsson", "20011010-1234").getId();
+        String accountId = accountService.createAccount(arneId, "start").getId();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        for (int i = 0; i < 32; i++) {
+            int n = i;
+            executorService.execute(() -> {
+                try {
+                    start.await();
+                    accountService.changeAccount(arneId, accountId, changeAccount -> {
+                        try {
+                            changeAccount.setName("name " + n);
+                        } catch (UseException e) {
+                            throw new RuntimeException("Name change failed", e);
+                        }
+                    });
+                } catch (UseException e) {
+                    throw new RuntimeException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Then
+        String finalName = accountService.findAccountsAfter(null, null).map(Account::getName).collect(Collectors.toList()).get(0);
+        for (int n = 0; n < 32; n++)
+            if (!finalName.equals("name " + n))
+                accountService.createAccount(arneId, "name " + n);
+        accountService.createAccount(arneId, "start");
+        UseException exception = assertThrows(UseException.class, () -> accountService.createAccount(arneId, finalName));
+        assertThat(exception.getUserExceptionType(), is(UseExceptionType.ACCOUNT_NAME_NOT_UNIQUE));
+    }
+
+    @Test
+    void failed_rename_save_releases_the_new_name() throws UseException {
+        // Given
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        AtomicBoolean failing = new AtomicBoolean();
+        AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, new IndexedRepository.AccountsIndexedRepository() {
+            @Override
+            public Account save(Account account) {
+                if (failing.get())
+                    throw new IllegalStateException("Disk full");
+                return super.save(account);
+            }
+        });
+        String arneId = new UserServiceImpl(usersRepository).createUser("Arne Gunnarsson", "20011010-1234").getId();
+        Account account = accountService.createAccount(arneId, "default");
+        failing.set(true);
+
+        // When
+        assertThrows(IllegalStateException.class, () -> accountService.changeAccount(arneId, account.getId(), changeAccount -> {
+            try {
+                changeAccount.setName("savings");
+            } catch (UseException e) {
+                throw new RuntimeException("Name change failed", e);
+            }
+        }));
+        failing.set(false);
+
+        // Then
+        assertThat(account.getName(), is("default"));
+        assertThat(accountService.createAccount(arneId, "savings").getName(), is("savings"));
+        assertThrows(UseException.class, () -> accountService.createAccount(arneId, "default"));
+    }
+}
@@ -0,0 +1,131 @@
+package se.sensera.banking.impl.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.Account;
+import se.sensera.banking.User;
+import se.sensera.banking.UserService;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServiceOperationEventTest {
+    static final String EVENT_NAME = "se.sensera.banking.ServiceOperation";
+
+    @TempDir
+    Path directory;
+
+    UserServiceImpl userService;
+    AccountServiceImpl accountService;
+    TransactionServiceImpl transactionService;
+
+    @BeforeEach
+    void setUp() {
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        IndexedRepository.AccountsIndexedRepository accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        userService = new UserServiceImpl(usersRepository);
+        accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, new IndexedRepository.TransactionsIndexedRepository());
+    }
+
+    @Test
+    void events_recorded_for_service_calls() throws Exception {
+        // Given
+        User user = userService.createUser("Arne Gunnarsson", "20011010-1234");
+        Account account = accountService.createAccount(user.getId(), "default");
+        transactionService.createTransaction("2020-01-01 10:00", user.getId(), account.getId(), 100);
+
+        // When
+        List<RecordedEvent> events = record(() -> {
+            transactionService.createTransaction("2020-01-01 10:01", user.getId(), account.getId(), 50);
+            assertThrows(UseException.class, () -> transactionService.createTransaction("2020-01-01 10:02", user.getId(), account.getId(), -1000));
+            transactionService.sum("2020-01-01 10:05", user.getId(), account.getId());
+        });
+
+        // Then
+        assertThat(events.stream().map(event -> event.getString("outcome")).collect(Collectors.toList()),
+                contains("SUCCEEDED", "NOT_FUNDED", "SUCCEEDED"));
+        assertThat(events.stream().map(event -> event.getString("activity")).collect(Collectors.toList()),
+                contains("CREATE_TRANSACTION", "CREATE_TRANSACTION", "SUM_TRANSACTION"));
+        assertThat(events.get(0).getString("accountId"), is(account.getId()));
+        assertThat(events.get(2).getLong("scanned"), is(2L));
+        assertThat(events.get(2).getDuration().isNegative(), is(false));
+    }
+
+    @Test
+    void events_recorded_for_lookups() throws Exception {
+        // Given
+        User user = userService.createUser("Arne Gunnarsson", "20011010-1234");
+        Account account = accountService.createAccount(user.getId(), "default");
+
+        // When
+        List<RecordedEvent> events = record(() -> {
+            userService.getUser(user.getId());
+            userService.find("arne", null, null, UserService.SortOrder.None);
+            userService.findSimilar("Arne Gunarsson", 2, null);
+            accountService.findAccountsAfter(null, 10);
+            transactionService.countSum(new Date(), account.getId());
+        });
+
+        // Then
+        assertThat(events.stream().map(event -> event.getString("activity")).collect(Collectors.toList()),
+                contains("FIND_USER", "FIND_USER", "FIND_USER", "FIND_ACCOUNT"));
+    }
+
+    @Test
+    void no_events_when_not_enabled() throws Exception {
+        // Given
+        User user = userService.createUser("Arne Gunnarsson", "20011010-1234");
+
+        // When
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.start();
+            accountService.createAccount(user.getId(), "default");
+            recording.stop();
+            events = read(recording);
+        }
+
+        // Then
+        assertThat(events, is(empty()));
+    }
+
+    private List<RecordedEvent> record(Calls calls) throws Exception {
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT_NAME).withoutThreshold();
+            recording.start();
+            calls.run();
+            recording.stop();
+            return read(recording);
+        }
+    }
+
+    private List<RecordedEvent> read(Recording recording) throws IOException {
+        Path file = directory.resolve("recording.jfr");
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(EVENT_NAME))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .collect(Collectors.toList());
+    }
+
+    interface Calls {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,99 @@
+package se.sensera.banking.impl.metrics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.User;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Fails when a hot path starts allocating more than its budget. Budgets are bytes per call on the calling thread
+ * with {@value #ACCOUNTS} accounts holding one transaction each, with some headroom over what was measured when they
+ * were set. Lower a budget when an operation gets leaner, raising one needs a reason.
+ */
+class AllocationBudgetTest {
+    static final int ACCOUNTS = 1000;
+    static final int WARMUP = 5000;
+    static final int CALLS = 2000;
+    static final String CREATED = "2020-01-01 10:00";
+
+    static final double GET_ENTITY_BY_ID_BUDGET = 64;
+    // all() hands out a copy of the transaction list, a few bytes per stored transaction
+    static final double SUM_BUDGET = 8 * ACCOUNTS;
+    // The funds check sums over all() like sum, every call adds a transaction so it is sized for the last call
+    static final double CREATE_TRANSACTION_BUDGET = 8 * (ACCOUNTS + WARMUP + CALLS);
+    static final double REJECTED_TRANSACTION_BUDGET = 1_500;
+
+    IndexedRepository.UsersIndexedRepository usersRepository;
+    IndexedRepository.AccountsIndexedRepository accountsRepository;
+    IndexedRepository.TransactionsIndexedRepository transactionsRepository;
+    TransactionServiceImpl transactionService;
+    List<User> users = new ArrayList<>();
+    List<Account> accounts = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws UseException {
+        assumeTrue(AllocationMeter.isSupported());
+        usersRepository = new IndexedRepository.UsersIndexedRepository();
+        accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        transactionsRepository = new IndexedRepository.TransactionsIndexedRepository();
+        UserServiceImpl userService = new UserServiceImpl(usersRepository);
+        AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+        transactionService = new TransactionServiceImpl(usersRepository, accountsRepository, transactionsRepository);
+        for (int n = 0; n < ACCOUNTS; n++) {
+            User user = userService.createUser("User " + n, "19800101-" + n);
+            Account account = accountService.createAccount(user.getId(), "Account " + n);
+            transactionService.createTransaction(CREATED, user.getId(), account.getId(), 1000);
+            users.add(user);
+            accounts.add(account);
+        }
+    }
+
+    @Test
+    void get_entity_by_id_within_budget() {
+        // When
+        double bytes = AllocationMeter.bytesPerCall(WARMUP, CALLS, n -> accountsRepository.getEntityById(accounts.get(n % ACCOUNTS).getId()));
+
+        // Then
+        assertThat(bytes, is(lessThanOrEqualTo(GET_ENTITY_BY_ID_BUDGET)));
+    }
+
+    @Test
+    void sum_within_budget() throws UseException {
+        // When
+        double bytes = AllocationMeter.bytesPerCall(WARMUP, CALLS, n -> transactionService.sum(CREATED, users.get(n % ACCOUNTS).getId(), accounts.get(n % ACCOUNTS).getId()));
+
+        // Then
+        assertThat(bytes, is(lessThanOrEqualTo(SUM_BUDGET)));
+    }
+
+    @Test
+    void create_transaction_within_budget() throws UseException {
+        // When
+        double bytes = AllocationMeter.bytesPerCall(WARMUP, CALLS, n -> transactionService.createTransaction(CREATED, users.get(n % ACCOUNTS).getId(), accounts.get(n % ACCOUNTS).getId(), 1));
+
+        // Then
+        assertThat(bytes, is(lessThanOrEqualTo(CREATE_TRANSACTION_BUDGET)));
+    }
+
+    @Test
+    void rejected_try_create_transaction_within_budget() {
+        // When
+        double bytes = AllocationMeter.bytesPerCall(WARMUP, CALLS, n -> transactionService.tryCreateTransaction(CREATED, users.get(n % ACCOUNTS).getId(), accounts.get((n + 1) % ACCOUNTS).getId(), 1));
+
+        // Then
+        assertThat(bytes, is(lessThanOrEqualTo(REJECTED_TRANSACTION_BUDGET)));
+    }
+}
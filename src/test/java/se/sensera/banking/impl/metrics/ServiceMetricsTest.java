@@ -0,0 +1,130 @@
+package se.sensera.banking.impl.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.TransactionService;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.exceptions.UseExceptionType;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ServiceMetricsTest {
+
+    TransactionService transactionService;
+    ServiceMetrics metrics;
+    MeteredTransactionService meteredTransactionService;
+
+    @BeforeEach
+    void setUp() {
+        transactionService = mock(TransactionService.class);
+        metrics = new ServiceMetrics("test-" + UUID.randomUUID());
+        meteredTransactionService = new MeteredTransactionService(transactionService, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        metrics.close();
+    }
+
+    @Test
+    void calls_counted_by_outcome() throws UseException {
+        // Given
+        when(transactionService.sum(anyString(), anyString(), anyString())).thenReturn(100.0);
+        when(transactionService.createTransaction(anyString(), anyString(), anyString(), anyDouble()))
+                .thenReturn(null)
+                .thenThrow(new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_FUNDED))
+                .thenThrow(new IllegalStateException("broken"));
+
+        // When
+        meteredTransactionService.sum("2020-01-01 10:00", "user", "account");
+        meteredTransactionService.createTransaction("2020-01-01 10:00", "user", "account", 10);
+        assertThrows(UseException.class, () -> meteredTransactionService.createTransaction("2020-01-01 10:00", "user", "account", -1000));
+        assertThrows(IllegalStateException.class, () -> meteredTransactionService.createTransaction("2020-01-01 10:00", "user", "account", 10));
+
+        // Then
+        ActivityMetrics createTransaction = metrics.forActivity(Activity.CREATE_TRANSACTION);
+        assertThat(createTransaction.getCalls(), is(3L));
+        assertThat(createTransaction.getSucceeded(), is(1L));
+        assertThat(createTransaction.getRejected(), is(1L));
+        assertThat(createTransaction.getFailed(), is(1L));
+        assertThat(createTransaction.rejections(UseExceptionType.NOT_FUNDED), is(1L));
+        assertThat(metrics.forActivity(Activity.SUM_TRANSACTION).getSucceeded(), is(1L));
+    }
+
+    @Test
+    void rejection_counted_under_called_activity() throws UseException {
+        // Given
+        when(transactionService.sum(anyString(), anyString(), anyString()))
+                .thenThrow(new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.ACCOUNT_NOT_FOUND));
+
+        // When
+        assertThrows(UseException.class, () -> meteredTransactionService.sum("2020-01-01 10:00", "user", "account"));
+
+        // Then
+        assertThat(metrics.forActivity(Activity.SUM_TRANSACTION).rejections(UseExceptionType.ACCOUNT_NOT_FOUND), is(1L));
+        assertThat(metrics.forActivity(Activity.CREATE_TRANSACTION).getCalls(), is(0L));
+    }
+
+    @Test
+    void metrics_published_as_mbeans() throws Exception {
+        // Given
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        metrics.registerMBeans(mBeanServer);
+        when(transactionService.createTransaction(anyString(), anyString(), anyString(), anyDouble()))
+                .thenThrow(new UseException(Activity.CREATE_TRANSACTION, UseExceptionType.NOT_ALLOWED));
+
+        // When
+        assertThrows(UseException.class, () -> meteredTransactionService.createTransaction("2020-01-01 10:00", "user", "account", 10));
+
+        // Then
+        Object calls = mBeanServer.getAttribute(metrics.objectName(Activity.CREATE_TRANSACTION), "Calls");
+        TabularData rejections = (TabularData) mBeanServer.getAttribute(metrics.objectName(Activity.CREATE_TRANSACTION), "Rejections");
+        assertThat(calls, is(1L));
+        assertThat(rejections.size(), is(1));
+        metrics.close();
+        assertThat(mBeanServer.isRegistered(metrics.objectName(Activity.CREATE_TRANSACTION)), is(false));
+    }
+
+    @Test
+    void latency_percentiles_within_bucket_precision() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        LongStream.rangeClosed(1, 10_000).forEach(n -> histogram.record(n * 1000));
+
+        // Then
+        assertThat(histogram.count(), is(10_000L));
+        assertThat((double) histogram.valueAtPercentile(50), is(closeTo(5_000_000, 5_000_000 * 0.125)));
+        assertThat((double) histogram.valueAtPercentile(99), is(closeTo(9_900_000, 9_900_000 * 0.125)));
+        assertThat(histogram.valueAtPercentile(100), is(10_000_000L));
+        assertThat(histogram.max(), is(10_000_000L));
+        assertThat(histogram.mean(), is(closeTo(5_000_500, 1)));
+    }
+
+    @Test
+    void buckets_cover_every_value() {
+        // Given
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456_789, Long.MAX_VALUE};
+
+        // When / Then
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(LatencyHistogram.lowestValueIn(bucket), is(lessThanOrEqualTo(value)));
+            assertThat(LatencyHistogram.highestValueIn(bucket), is(greaterThanOrEqualTo(value)));
+        }
+    }
+}
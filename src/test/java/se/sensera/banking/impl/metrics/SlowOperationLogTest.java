@@ -0,0 +1,137 @@
+package se.sensera.banking.impl.metrics;
+
+import org.junit.jupiter.api.Test;
+import se.sensera.banking.Account;
+import se.sensera.banking.User;
+import se.sensera.banking.exceptions.Activity;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.EntityResolver;
+import se.sensera.banking.impl.IndexedRepository;
+import se.sensera.banking.impl.TransactionServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SlowOperationLogTest {
+
+    @Test
+    void slow_transaction_recorded_with_phases() throws UseException {
+        // Given
+        SlowOperationLog slowOperations = new SlowOperationLog(16, 1.0, Long.MAX_VALUE)
+                .setThreshold(Activity.CREATE_TRANSACTION, 20, TimeUnit.MILLISECONDS);
+        IndexedRepository.UsersIndexedRepository usersRepository = new IndexedRepository.UsersIndexedRepository();
+        IndexedRepository.AccountsIndexedRepository accountsRepository = new IndexedRepository.AccountsIndexedRepository();
+        TransactionServiceImpl transactionService = new TransactionServiceImpl(usersRepository, accountsRepository,
+                new IndexedRepository.TransactionsIndexedRepository(), new EntityResolver(usersRepository, accountsRepository), slowOperations);
+        User user = new UserServiceImpl(usersRepository).createUser("Arne Gunnarsson", "20011010-1234");
+        Account account = new AccountServiceImpl(usersRepository, accountsRepository).createAccount(user.getId(), "default");
+        transactionService.createTransaction("2020-01-01 10:00", user.getId(), account.getId(), 100);
+        transactionService.addMonitor(transaction -> sleep(30));
+
+        // When
+        transactionService.createTransaction("2020-01-01 10:01", user.getId(), account.getId(), 100);
+        transactionService.sum("2020-01-01 10:05", user.getId(), account.getId());
+
+        // Then
+        List<SlowOperation> operations = slowOperations.snapshot();
+        assertThat(operations, hasSize(1));
+        SlowOperation operation = operations.get(0);
+        assertThat(operation.getActivity(), is(Activity.CREATE_TRANSACTION));
+        assertThat(operation.getOutcome(), is(SlowOperationLog.SUCCEEDED));
+        assertThat(operation.getArguments(), contains("2020-01-01 10:01", user.getId(), account.getId(), "100.0"));
+        assertThat(operation.getThreadName(), is(Thread.currentThread().getName()));
+        assertThat(operation.getPhaseNanos().get(SlowOperation.Phase.MONITOR_FAN_OUT), is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30))));
+        assertThat(operation.getPhaseNanos().keySet(), hasItems(SlowOperation.Phase.LOOKUP, SlowOperation.Phase.FUNDS_CHECK, SlowOperation.Phase.SAVE));
+        assertThat(slowOperations.dump().get(0), containsString("monitor-fan-out="));
+    }
+
+    @Test
+    void ring_keeps_latest_operations() throws UseException {
+        // Given
+        SlowOperationLog slowOperations = new SlowOperationLog(4, 1.0, 0);
+
+        // When
+        for (int n = 0; n < 10; n++) {
+            int call = n;
+            slowOperations.timed(Activity.FIND_USER, () -> new Object[]{call}, timer -> call);
+        }
+
+        // Then
+        assertThat(slowOperations.getRecorded(), is(10L));
+        assertThat(slowOperations.snapshot().stream().map(operation -> operation.getArguments().get(0)).toArray(),
+                is(new Object[]{"6", "7", "8", "9"}));
+    }
+
+    @Test
+    void unsampled_operations_not_timed() throws UseException {
+        // Given
+        SlowOperationLog slowOperations = new SlowOperationLog(16, 0.0, 0);
+
+        // When
+        IntStream.range(0, 100).forEach(n -> slowOperations.timedUnchecked(Activity.FIND_USER, () -> new Object[0], result -> null, timer -> {
+            assertThat(timer, is(sameInstance(OperationTimer.NONE)));
+            return n;
+        }));
+
+        // Then
+        assertThat(slowOperations.snapshot(), is(empty()));
+    }
+
+    @Test
+    void arguments_only_built_for_slow_operations() throws UseException {
+        // Given
+        SlowOperationLog slowOperations = new SlowOperationLog(16, 1.0, 1000);
+        AtomicInteger built = new AtomicInteger();
+
+        // When
+        for (int n = 0; n < 100; n++)
+            slowOperations.timed(Activity.FIND_USER, () -> new Object[]{built.incrementAndGet()}, timer -> null);
+        SlowOperationLog.DISABLED.timed(Activity.FIND_USER, () -> new Object[]{built.incrementAndGet()}, timer -> null);
+
+        // Then
+        assertThat(built.get(), is(0));
+        assertThat(slowOperations.snapshot(), is(empty()));
+    }
+
+    @Test
+    void disabled_log_cannot_be_turned_on() {
+        // When
+        assertThrows(UnsupportedOperationException.class, () -> SlowOperationLog.DISABLED.setSampleRate(1.0));
+        assertThrows(UnsupportedOperationException.class, () -> SlowOperationLog.DISABLED.setThresholdMillis(Activity.FIND_USER.name(), 0));
+        assertThrows(UnsupportedOperationException.class, () -> SlowOperationLog.DISABLED.registerMBean("disabled"));
+
+        // Then
+        assertThat(SlowOperationLog.DISABLED.getSampleRate(), is(0.0));
+        assertThat(SlowOperationLog.DISABLED.getThresholdMillis(Activity.FIND_USER.name()), is(Long.MAX_VALUE));
+        assertThat(SlowOperationLog.DISABLED.start(Activity.FIND_USER), is(sameInstance(OperationTimer.NONE)));
+    }
+
+    @Test
+    void sampling_records_a_fraction() throws UseException {
+        // Given
+        SlowOperationLog slowOperations = new SlowOperationLog(1024, 0.1, 0);
+
+        // When
+        for (int n = 0; n < 1000; n++)
+            slowOperations.timed(Activity.FIND_USER, () -> new Object[0], timer -> null);
+
+        // Then
+        assertThat(slowOperations.getRecorded(), is(both(greaterThan(20L)).and(lessThan(250L))));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
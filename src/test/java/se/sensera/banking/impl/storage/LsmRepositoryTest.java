@@ -0,0 +1,133 @@
+package se.sensera.banking.impl.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.sensera.banking.Account;
+import se.sensera.banking.AccountService;
+import se.sensera.banking.User;
+import se.sensera.banking.exceptions.UseException;
+import se.sensera.banking.impl.AccountServiceImpl;
+import se.sensera.banking.impl.UserServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class LsmRepositoryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void changed_user_survives_restart() throws IOException, UseException {
+        // Given
+        String userId;
+        try (LsmRepository.UsersLsmRepository usersRepository = usersRepository()) {
+            UserServiceImpl userService = new UserServiceImpl(usersRepository);
+            userId = userService.createUser("Arne Gunnarsson", "20011010-1234").getId();
+            userService.createUser("Lisa Gunnarsson", "20011010-0234");
+
+            // When
+            userService.changeUser(userId, changeUser -> changeUser.setName("Arne Andersson"));
+        }
+
+        // Then
+        try (LsmRepository.UsersLsmRepository usersRepository = usersRepository()) {
+            User user = usersRepository.getEntityById(userId).orElseThrow();
+            assertThat(user.getName(), is("Arne Andersson"));
+            assertThat(user.getPersonalIdentificationNumber(), is("20011010-1234"));
+            assertThat(usersRepository.all().collect(Collectors.toList()), hasSize(2));
+        }
+    }
+
+    @Test
+    void inactivated_account_survives_restart() throws IOException, UseException {
+        // Given
+        String accountId;
+        String lisaId;
+        try (LsmRepository.UsersLsmRepository usersRepository = usersRepository();
+             LsmRepository.AccountsLsmRepository accountsRepository = accountsRepository(usersRepository)) {
+            UserServiceImpl userService = new UserServiceImpl(usersRepository);
+            AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+            String arneId = userService.createUser("Arne Gunnarsson", "20011010-1234").getId();
+            lisaId = userService.createUser("Lisa Gunnarsson", "20011010-0234").getId();
+            accountId = accountService.createAccount(arneId, "default").getId();
+            accountService.addUserToAccount(arneId, accountId, lisaId);
+
+            // When
+            accountService.inactivateAccount(arneId, accountId);
+        }
+
+        // Then
+        try (LsmRepository.UsersLsmRepository usersRepository = usersRepository();
+             LsmRepository.AccountsLsmRepository accountsRepository = accountsRepository(usersRepository)) {
+            Account account = accountsRepository.getEntityById(accountId).orElseThrow();
+            assertThat(account.isActive(), is(false));
+            assertThat(account.getOwner().getName(), is("Arne Gunnarsson"));
+            assertThat(account.getUsers().map(User::getId).collect(Collectors.toList()), contains(lisaId));
+        }
+    }
+
+    @Test
+    void indexed_accounts_follow_user_membership() throws IOException, UseException {
+        try (LsmRepository.UsersLsmRepository usersRepository = usersRepository();
+             LsmRepository.AccountsLsmRepository accountsRepository = accountsRepository(usersRepository)) {
+            // Given
+            UserServiceImpl userService = new UserServiceImpl(usersRepository);
+            AccountServiceImpl accountService = new AccountServiceImpl(usersRepository, accountsRepository);
+            String arneId = userService.createUser("Arne Gunnarsson", "20011010-1234").getId();
+            String lisaId = userService.createUser("Lisa Gunnarsson", "20011010-0234").getId();
+            String accountId = accountService.createAccount(arneId, "default").getId();
+            accountService.findAccounts("", arneId, null, null, AccountService.SortOrder.None);
+            accountService.findAccountsAfter(null, null);
+            accountService.findAccounts("def", null, null, null, AccountService.SortOrder.None);
+
+            // When
+            accountService.addUserToAccount(arneId, accountId, lisaId);
+
+            // Then
+            assertThat(usersOf(accountService.findAccounts("", arneId, null, null, AccountService.SortOrder.None)), contains(lisaId));
+            assertThat(usersOf(accountService.findAccountsAfter(null, null)), contains(lisaId));
+            assertThat(usersOf(accountService.findAccounts("def", null, null, null, AccountService.SortOrder.None)), contains(lisaId));
+
+            // When
+            accountService.removeUserFromAccount(arneId, accountId, lisaId);
+
+            // Then
+            assertThat(usersOf(accountService.findAccounts("", arneId, null, null, AccountService.SortOrder.None)), is(empty()));
+            assertThat(usersOf(accountService.findAccountsAfter(null, null)), is(empty()));
+        }
+    }
+
+    @Test
+    void deleted_user_is_gone() throws IOException, UseException {
+        try (LsmRepository.UsersLsmRepository usersRepository = usersRepository()) {
+            // Given
+            User user = new UserServiceImpl(usersRepository).createUser("Arne Gunnarsson", "20011010-1234");
+
+            // When
+            usersRepository.delete(user);
+
+            // Then
+            assertThat(usersRepository.getEntityById(user.getId()).isPresent(), is(false));
+            assertThat(usersRepository.all().collect(Collectors.toList()), is(empty()));
+        }
+    }
+
+    private static List<String> usersOf(Stream<Account> accounts) {
+        return accounts.flatMap(Account::getUsers).map(User::getId).collect(Collectors.toList());
+    }
+
+    private LsmRepository.UsersLsmRepository usersRepository() throws IOException {
+        return new LsmRepository.UsersLsmRepository(new LsmStore(directory.resolve("users")));
+    }
+
+    private LsmRepository.AccountsLsmRepository accountsRepository(LsmRepository.UsersLsmRepository usersRepository) throws IOException {
+        return new LsmRepository.AccountsLsmRepository(new LsmStore(directory.resolve("accounts")), usersRepository);
+    }
+}
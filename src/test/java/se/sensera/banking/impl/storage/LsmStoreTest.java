@@ -0,0 +1,265 @@
+package se.sensera.banking.impl.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LsmStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void put_and_get_success() throws IOException {
+        try (LsmStore store = new LsmStore(directory)) {
+            // When
+            store.put("a", bytes("1"));
+            store.put("b", bytes("2"));
+            store.put("a", bytes("3"));
+
+            // Then
+            assertThat(string(store.get("a")), is("3"));
+            assertThat(string(store.get("b")), is("2"));
+            assertThat(store.get("c"), is(nullValue()));
+        }
+    }
+
+    @Test
+    void get_from_flushed_tables_success() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 1024, 100, false)) {
+            // Given
+            IntStream.range(0, 1000).forEach(n -> store.put(key(n), bytes("value " + n)));
+
+            // When
+            store.flush();
+
+            // Then
+            assertThat(store.tableCount(), is(greaterThan(1)));
+            IntStream.range(0, 1000).forEach(n -> assertThat(string(store.get(key(n))), is("value " + n)));
+        }
+    }
+
+    @Test
+    void get_from_memory_mapped_tables_success() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 1024, 3, false, true)) {
+            // Given
+            IntStream.range(0, 1000).forEach(n -> store.put(key(n), bytes("value " + n)));
+
+            // When
+            store.flush();
+
+            // Then
+            IntStream.range(0, 1000).forEach(n -> assertThat(string(store.get(key(n))), is("value " + n)));
+            assertThat(keys(store), hasSize(1000));
+        }
+    }
+
+    @Test
+    void deleted_key_is_hidden_from_older_tables() throws IOException {
+        try (LsmStore store = new LsmStore(directory)) {
+            // Given
+            store.put("a", bytes("1"));
+            store.put("b", bytes("2"));
+            store.flush();
+
+            // When
+            store.delete("a");
+            store.flush();
+
+            // Then
+            assertThat(store.get("a"), is(nullValue()));
+            assertThat(keys(store), contains("b"));
+        }
+    }
+
+    @Test
+    void compaction_merges_tables_and_drops_deleted_keys() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 512, 100, false)) {
+            // Given
+            IntStream.range(0, 500).forEach(n -> store.put(key(n), bytes("first " + n)));
+            IntStream.range(0, 500).filter(n -> n % 2 == 0).forEach(n -> store.delete(key(n)));
+            IntStream.range(0, 500).filter(n -> n % 3 == 0).forEach(n -> store.put(key(n), bytes("second " + n)));
+            store.flush();
+
+            // When
+            store.compact();
+
+            // Then
+            assertThat(store.tableCount(), is(1));
+            List<String> expected = IntStream.range(0, 500)
+                    .filter(n -> n % 2 != 0 || n % 3 == 0)
+                    .mapToObj(LsmStoreTest::key)
+                    .collect(Collectors.toList());
+            assertThat(keys(store), is(expected));
+            assertThat(string(store.get(key(6))), is("second 6"));
+            assertThat(string(store.get(key(7))), is("first 7"));
+            assertThat(store.get(key(4)), is(nullValue()));
+        }
+    }
+
+    @Test
+    void table_file_left_behind_is_reported() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 1024, 100, false)) {
+            // Given
+            store.put(key(1), bytes("first"));
+            store.flush();
+            store.put(key(2), bytes("second"));
+            store.flush();
+            Path table = tableFiles().get(0);
+            Files.delete(table);
+            Files.createFile(Files.createDirectory(table).resolve("blocker"));
+
+            // When
+            IllegalStateException exception = assertThrows(IllegalStateException.class, store::compact);
+
+            // Then
+            assertThat(exception.getCause(), is(instanceOf(IOException.class)));
+            assertThat(string(store.get(key(1))), is("first"));
+            store.put(key(3), bytes("third"));
+        }
+    }
+
+    @Test
+    void scan_stopped_early_does_not_keep_compacted_tables() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 1024, 100, false)) {
+            // Given
+            IntStream.range(0, 1000).forEach(n -> store.put(key(n), bytes("value " + n)));
+            store.flush();
+            assertThat(store.scan().findFirst().get().getKey(), is(key(0)));
+            assertThat(store.scan().limit(10).count(), is(10L));
+
+            // When
+            store.compact();
+
+            // Then
+            assertThat(tableFiles(), hasSize(1));
+        }
+    }
+
+    @Test
+    void scan_reads_past_batches_while_tables_are_compacted() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 1024, 100, false)) {
+            // Given
+            IntStream.range(0, 3000).forEach(n -> store.put(key(n), bytes("value " + n)));
+            store.flush();
+            Iterator<Map.Entry<String, byte[]>> scan = store.scan().iterator();
+            scan.next();
+
+            // When
+            store.compact();
+
+            // Then
+            int count = 1;
+            for (; scan.hasNext(); scan.next())
+                count++;
+            assertThat(count, is(3000));
+        }
+    }
+
+    @Test
+    void size_tiered_compaction_leaves_older_tables_alone() throws IOException {
+        try (LsmStore store = new LsmStore(directory, 1 << 20, 4, false)) {
+            // Given
+            IntStream.range(0, 2000).forEach(n -> store.put(key(n), bytes("first " + n)));
+            store.flush();
+            Path large = tableFiles().get(0);
+
+            // When
+            for (int n = 0; n < 4; n++) {
+                store.put(key(n), bytes("second " + n));
+                store.flush();
+            }
+
+            // Then
+            assertThat(store.tableCount(), is(2));
+            assertThat(tableFiles(), hasItem(large));
+            assertThat(string(store.get(key(3))), is("second 3"));
+            assertThat(string(store.get(key(4))), is("first 4"));
+        }
+    }
+
+    @Test
+    void size_tiered_compaction_bounds_table_count() throws IOException {
+        // Given
+        try (LsmStore store = new LsmStore(directory, 1024, 4, false)) {
+            IntStream.range(0, 2000).forEach(n -> store.put(key(n), bytes("first " + n)));
+            IntStream.range(0, 2000).filter(n -> n % 2 == 0).forEach(n -> store.delete(key(n)));
+            IntStream.range(0, 2000).filter(n -> n % 3 == 0).forEach(n -> store.put(key(n), bytes("second " + n)));
+
+            // When
+            store.flush();
+
+            // Then
+            assertThat(store.tableCount(), is(lessThan(4 * 4)));
+            assertThat(keys(store), is(expectedAfterOverwrites(2000)));
+        }
+
+        // Then
+        try (LsmStore store = new LsmStore(directory)) {
+            assertThat(keys(store), is(expectedAfterOverwrites(2000)));
+            assertThat(string(store.get(key(6))), is("second 6"));
+            assertThat(store.get(key(8)), is(nullValue()));
+        }
+    }
+
+    @Test
+    void reopen_recovers_flushed_and_logged_writes() throws IOException {
+        // Given
+        try (LsmStore store = new LsmStore(directory, 1024, 3, false)) {
+            IntStream.range(0, 300).forEach(n -> store.put(key(n), bytes("value " + n)));
+            store.delete(key(10));
+        }
+
+        // When
+        try (LsmStore store = new LsmStore(directory)) {
+
+            // Then
+            assertThat(store.get(key(10)), is(nullValue()));
+            assertThat(string(store.get(key(299))), is("value 299"));
+            assertThat(keys(store), hasSize(299));
+        }
+    }
+
+    private static List<String> expectedAfterOverwrites(int count) {
+        return IntStream.range(0, count)
+                .filter(n -> n % 2 != 0 || n % 3 == 0)
+                .mapToObj(LsmStoreTest::key)
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> tableFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(SSTable.SUFFIX)).collect(Collectors.toList());
+        }
+    }
+
+    private static String key(int n) {
+        return String.format("key-%05d", n);
+    }
+
+    private static List<String> keys(LsmStore store) {
+        return store.scan().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -3,8 +3,13 @@ package se.sensera.banking.utils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -68,4 +73,84 @@ class ListUtilsTest {
         assertThat(rs, is(empty()));
     }
 
-}
\ No newline at end of file
+    @Test
+    void later_pages_with_pageSize_success() {
+        // When
+        List<Integer> rs = ListUtils.applyPage(list.stream(), 3, 3).collect(Collectors.toList());
+
+        assertThat(rs, contains(9));
+        assertThat(ListUtils.applyPage(list.stream(), 1, 4).collect(Collectors.toList()), contains(4, 5, 6, 7));
+    }
+
+    @Test
+    void page_stops_reading_early_success() {
+        // Given
+        AtomicInteger read = new AtomicInteger();
+
+        // When
+        List<Integer> rs = ListUtils.applyPage(Stream.iterate(0, n -> n + 1).peek(n -> read.incrementAndGet()), 2, 5)
+                .collect(Collectors.toList());
+
+        // Then
+        assertThat(rs, contains(10, 11, 12, 13, 14));
+        assertThat(read.get(), is(15));
+    }
+
+    @Test
+    void keyset_page_after_cursor_success() {
+        // When
+        List<Integer> rs = ListUtils.applyPageAfter(list.stream(), n -> n, 6, 2).collect(Collectors.toList());
+
+        // Then
+        assertThat(rs, contains(7, 8));
+        assertThat(ListUtils.applyPageAfter(list.stream(), n -> n, null, 2).collect(Collectors.toList()), contains(0, 1));
+    }
+
+    @Test
+    void sorted_page_from_parallel_stream_success() {
+        // Given
+        List<Integer> shuffled = IntStream.range(0, 10_000).boxed().collect(Collectors.toList());
+        Collections.shuffle(shuffled, new Random(1));
+
+        // When
+        Page<Integer> page = shuffled.parallelStream().collect(ListUtils.sortedPage(Comparator.reverseOrder(), 2, 3));
+
+        // Then
+        assertThat(page.getItems(), contains(9993, 9992, 9991));
+        assertThat(page.getTotalHits(), is(10_000L));
+    }
+
+    @Test
+    void sorted_page_far_past_the_end_is_empty() {
+        // When
+        Page<Integer> page = list.stream().collect(ListUtils.sortedPage(Comparator.naturalOrder(), Integer.MAX_VALUE / 2, 4));
+        Page<Integer> negative = list.stream().collect(ListUtils.sortedPage(Comparator.naturalOrder(), -1, 4));
+
+        // Then
+        assertThat(page.getItems(), is(empty()));
+        assertThat(page.getTotalHits(), is(10L));
+        assertThat(negative.getItems(), is(empty()));
+        assertThat(negative.getTotalHits(), is(10L));
+    }
+
+    @Test
+    void counted_page_with_negative_page_is_empty() {
+        // When
+        Page<Integer> page = ListUtils.countedPage(list.stream(), -1, 3);
+
+        // Then
+        assertThat(page.getItems(), is(empty()));
+        assertThat(page.getTotalHits(), is(10L));
+    }
+
+    @Test
+    void counted_page_success() {
+        // When
+        Page<Integer> page = ListUtils.countedPage(list.stream(), 1, 3);
+
+        // Then
+        assertThat(page.getItems(), contains(3, 4, 5));
+        assertThat(page.getTotalHits(), is(10L));
+    }
+
+}